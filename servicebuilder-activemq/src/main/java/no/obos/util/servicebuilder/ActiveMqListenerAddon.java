@@ -8,7 +8,8 @@ import no.obos.metrics.ObosHealthCheckRegistry;
 import no.obos.util.servicebuilder.model.Addon;
 import no.obos.util.servicebuilder.model.PropertyProvider;
 import no.obos.util.servicebuilder.mq.ActiveMqListener;
-import no.obos.util.servicebuilder.mq.MessageHandler;
+import no.obos.util.servicebuilder.mq.ConsumerSettings;
+import no.obos.util.servicebuilder.mq.TypedMessageHandler;
 import no.obos.util.servicebuilder.mq.MessageQueueListener;
 import org.apache.commons.lang3.StringUtils;
 import org.glassfish.hk2.api.ServiceLocator;
@@ -16,6 +17,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 import javax.inject.Inject;
 import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.FeatureContext;
+import java.util.concurrent.Executor;
 
 /**
  * Initializes a MessageQueueListener and routes the messages to a specified handler class.
@@ -45,6 +47,21 @@ public class ActiveMqListenerAddon implements Addon {
     public static final String CONFIG_KEY_QUEUE_ERROR = "queue.name.error";
     public static final String CONFIG_KEY_ENTRIES_MAX = "queue.entries.max";
     public static final String CONFIG_KEY_ENTRIES_GRACE = "queue.entries.grace";
+    public static final String CONFIG_KEY_CONSUMERS = "queue.consumers";
+    public static final String CONFIG_KEY_WORKERS = "queue.workers";
+    public static final String CONFIG_KEY_PREFETCH = "queue.prefetch";
+    public static final String CONFIG_KEY_ACK_MODE = "queue.ack.mode";
+    public static final String CONFIG_KEY_REDELIVERY_MAX = "queue.redelivery.max";
+    public static final String CONFIG_KEY_REDELIVERY_DELAY_MILLIS = "queue.redelivery.delay.millis";
+    public static final String CONFIG_KEY_REDELIVERY_BACKOFF_MULTIPLIER = "queue.redelivery.backoff.multiplier";
+    public static final String CONFIG_KEY_REQUEUE_BATCH_SIZE = "queue.requeue.batch.size";
+    public static final String CONFIG_KEY_REQUEUE_MAX_PER_SECOND = "queue.requeue.max.per.second";
+    public static final String CONFIG_KEY_MONITOR_INTERVAL_MILLIS = "queue.monitor.interval.millis";
+    public static final String CONFIG_KEY_MAX_PER_SECOND = "queue.max.per.second";
+    public static final String CONFIG_KEY_INFLIGHT_MAX = "queue.inflight.max";
+    public static final String CONFIG_KEY_PAUSE_LATENCY_MILLIS = "queue.pause.latency.millis";
+    public static final String CONFIG_KEY_PAUSE_ERROR_RATE = "queue.pause.error.rate";
+    public static final String CONFIG_KEY_PAUSE_MILLIS = "queue.pause.millis";
 
     @Wither(AccessLevel.PRIVATE)
     public final MessageQueueListener mqListener;
@@ -65,12 +82,35 @@ public class ActiveMqListenerAddon implements Addon {
     public final int queueEntriesMax;
     @Wither(AccessLevel.PRIVATE)
     public final int queueEntriesGrace;
+    /**
+     * MessageHandler for JsonNode, eller en TypedMessageHandler for en egen meldingstype.
+     */
     @Wither(AccessLevel.PRIVATE)
-    public final Class<? extends MessageHandler> handler;
+    public final Class<? extends TypedMessageHandler<?>> handler;
+    /**
+     * Antall samtidige sesjoner som lytter på køen.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int consumers;
+    /**
+     * Antall meldinger som behandles samtidig i en arbeiderpool. 0 behandler meldingene på sesjonenes tråder.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int workers;
+    /**
+     * Egen arbeiderpool, i stedet for en med workers tråder.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final Executor executor;
+    /**
+     * Prefetch, kvitteringsmodus, nye forsøk før feilkø, flytting tilbake fra feilkø, måling av køene og flytkontroll.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final ConsumerSettings consumerSettings;
 
-    private static final ActiveMqListenerAddon defaults = new ActiveMqListenerAddon(null, null, null, null, null, null, null, 1, 60, null);
+    private static final ActiveMqListenerAddon defaults = new ActiveMqListenerAddon(null, null, null, null, null, null, null, 1, 60, null, 1, 0, null, ConsumerSettings.defaults);
 
-    public static ActiveMqListenerAddon defaults(Class<? extends MessageHandler> messageHandler) {
+    public static ActiveMqListenerAddon defaults(Class<? extends TypedMessageHandler<?>> messageHandler) {
         return defaults.handler(messageHandler);
     }
 
@@ -79,7 +119,7 @@ public class ActiveMqListenerAddon implements Addon {
         serviceConfig.addBinder((binder) -> {
             String name = StringUtils.trimToNull(this.name);
             binder.bind(this.mqListener).named(name).to(MessageQueueListener.class);
-            binder.bind(handler).named(name).to(MessageHandler.class);
+            binder.bind(handler).named(name).to(TypedMessageHandler.class);
             binder.bind(this).named(name).to(ActiveMqListenerAddon.class);
         });
 
@@ -97,7 +137,15 @@ public class ActiveMqListenerAddon implements Addon {
 
     @Override
     public ActiveMqListenerAddon initialize(ServiceConfig serviceConfig) {
-        return this.withMqListener(new ActiveMqListener(url, user, password, queueInput, queueError));
+        return this.withMqListener(new ActiveMqListener(url, user, password, queueInput, queueError, consumers, workers, executor,
+                serviceConfig.serviceDefinition.getJsonConfig().get(), consumerSettings));
+    }
+
+    @Override
+    public void cleanUp() {
+        if (mqListener instanceof ActiveMqListener) {
+            ((ActiveMqListener) mqListener).stop();
+        }
     }
 
     @Override
@@ -122,6 +170,23 @@ public class ActiveMqListenerAddon implements Addon {
                 .queueError(properties.get(prefix + CONFIG_KEY_QUEUE_ERROR))
                 .queueEntriesMax(Integer.parseInt(properties.get(prefix + CONFIG_KEY_ENTRIES_MAX)))
                 .queueEntriesGrace(Integer.parseInt(properties.get(prefix + CONFIG_KEY_ENTRIES_GRACE)))
+                .consumers(Integer.parseInt(properties.get(prefix + CONFIG_KEY_CONSUMERS, String.valueOf(consumers))))
+                .workers(Integer.parseInt(properties.get(prefix + CONFIG_KEY_WORKERS, String.valueOf(workers))))
+                .consumerSettings(consumerSettings
+                        .prefetch(Integer.parseInt(properties.get(prefix + CONFIG_KEY_PREFETCH, String.valueOf(consumerSettings.prefetch))))
+                        .acknowledgeMode(ConsumerSettings.AcknowledgeMode.valueOf(properties.get(prefix + CONFIG_KEY_ACK_MODE, consumerSettings.acknowledgeMode.name())))
+                        .maxRedeliveries(Integer.parseInt(properties.get(prefix + CONFIG_KEY_REDELIVERY_MAX, String.valueOf(consumerSettings.maxRedeliveries))))
+                        .redeliveryDelayMillis(Long.parseLong(properties.get(prefix + CONFIG_KEY_REDELIVERY_DELAY_MILLIS, String.valueOf(consumerSettings.redeliveryDelayMillis))))
+                        .redeliveryBackOffMultiplier(Double.parseDouble(properties.get(prefix + CONFIG_KEY_REDELIVERY_BACKOFF_MULTIPLIER, String.valueOf(consumerSettings.redeliveryBackOffMultiplier))))
+                        .requeueBatchSize(Integer.parseInt(properties.get(prefix + CONFIG_KEY_REQUEUE_BATCH_SIZE, String.valueOf(consumerSettings.requeueBatchSize))))
+                        .requeueMaxPerSecond(Integer.parseInt(properties.get(prefix + CONFIG_KEY_REQUEUE_MAX_PER_SECOND, String.valueOf(consumerSettings.requeueMaxPerSecond))))
+                        .monitorIntervalMillis(Long.parseLong(properties.get(prefix + CONFIG_KEY_MONITOR_INTERVAL_MILLIS, String.valueOf(consumerSettings.monitorIntervalMillis))))
+                        .maxPerSecond(Integer.parseInt(properties.get(prefix + CONFIG_KEY_MAX_PER_SECOND, String.valueOf(consumerSettings.maxPerSecond))))
+                        .maxInFlight(Integer.parseInt(properties.get(prefix + CONFIG_KEY_INFLIGHT_MAX, String.valueOf(consumerSettings.maxInFlight))))
+                        .pauseLatencyMillis(Long.parseLong(properties.get(prefix + CONFIG_KEY_PAUSE_LATENCY_MILLIS, String.valueOf(consumerSettings.pauseLatencyMillis))))
+                        .pauseErrorRate(Double.parseDouble(properties.get(prefix + CONFIG_KEY_PAUSE_ERROR_RATE, String.valueOf(consumerSettings.pauseErrorRate))))
+                        .pauseMillis(Long.parseLong(properties.get(prefix + CONFIG_KEY_PAUSE_MILLIS, String.valueOf(consumerSettings.pauseMillis))))
+                )
                 ;
     }
 
@@ -136,7 +201,7 @@ public class ActiveMqListenerAddon implements Addon {
             serviceLocator.getAllServices(ActiveMqListenerAddon.class).forEach(configuration -> {
                 String name = StringUtils.trimToNull(configuration.name);
                 MessageQueueListener listener = serviceLocator.getService(MessageQueueListener.class, name);
-                MessageHandler handler = serviceLocator.getService(MessageHandler.class, name);
+                TypedMessageHandler<?> handler = serviceLocator.getService(TypedMessageHandler.class, name);
                 listener.receiveMessages(handler);
             });
             return true;
@@ -179,8 +244,24 @@ public class ActiveMqListenerAddon implements Addon {
         return withQueueEntriesGrace(queueEntriesGrace);
     }
 
-    public ActiveMqListenerAddon handler(Class<? extends MessageHandler> handler) {
+    public ActiveMqListenerAddon handler(Class<? extends TypedMessageHandler<?>> handler) {
         return withHandler(handler);
     }
 
+    public ActiveMqListenerAddon consumers(int consumers) {
+        return withConsumers(consumers);
+    }
+
+    public ActiveMqListenerAddon workers(int workers) {
+        return withWorkers(workers);
+    }
+
+    public ActiveMqListenerAddon executor(Executor executor) {
+        return withExecutor(executor);
+    }
+
+    public ActiveMqListenerAddon consumerSettings(ConsumerSettings consumerSettings) {
+        return withConsumerSettings(consumerSettings);
+    }
+
 }
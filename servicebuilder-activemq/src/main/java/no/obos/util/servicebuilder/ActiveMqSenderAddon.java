@@ -19,6 +19,9 @@ public class ActiveMqSenderAddon implements Addon {
     public static final String CONFIG_KEY_PASSWORD = "queue.password";
     public static final String CONFIG_KEY_QUEUE = "queue.name";
     public static final String CONFIG_KEY_ENTRIES_GRACE = "queue.entries.grace";
+    public static final String CONFIG_KEY_SESSIONS = "queue.sessions";
+    public static final String CONFIG_KEY_BATCH_SIZE = "queue.batch.size";
+    public static final String CONFIG_KEY_ASYNC_PENDING_MAX = "queue.async.pending.max";
 
     @Wither(AccessLevel.PRIVATE)
     public final MessageQueueSender mqSender;
@@ -38,13 +41,36 @@ public class ActiveMqSenderAddon implements Addon {
     public final int queueEntriesGrace;
     @Wither(AccessLevel.PRIVATE)
     public final boolean registerHealthcheck;
+    /**
+     * Maks antall samtidige sesjoner mot køen, delt mellom tråder over én tilkobling.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxSessions;
+    /**
+     * Maks antall meldinger per transaksjon i queueMessages.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int batchSize;
+    /**
+     * Maks antall ubekreftede meldinger fra queueMessageAsync før avsender må vente.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxPendingAsync;
 
-    public static ActiveMqSenderAddon defaults = new ActiveMqSenderAddon(null, null, null, null, null, null, 60, true);
+    public static ActiveMqSenderAddon defaults = new ActiveMqSenderAddon(null, null, null, null, null, null, 60, true,
+            ActiveMqSender.DEFAULT_MAX_SESSIONS, ActiveMqSender.DEFAULT_BATCH_SIZE, ActiveMqSender.DEFAULT_MAX_PENDING_ASYNC);
 
 
     @Override
     public ActiveMqSenderAddon initialize(ServiceConfig serviceConfig) {
-        return this.withMqSender(new ActiveMqSender(url, user, password, queue));
+        return this.withMqSender(new ActiveMqSender(url, user, password, queue, maxSessions, batchSize, maxPendingAsync));
+    }
+
+    @Override
+    public void cleanUp() {
+        if (mqSender instanceof ActiveMqSender) {
+            ((ActiveMqSender) mqSender).stop();
+        }
     }
 
     @Override
@@ -85,6 +111,9 @@ public class ActiveMqSenderAddon implements Addon {
                 .password(properties.get(prefix + CONFIG_KEY_PASSWORD))
                 .queue(properties.get(prefix + CONFIG_KEY_QUEUE))
                 .queueEntriesGrace(Integer.parseInt(properties.get(prefix + CONFIG_KEY_ENTRIES_GRACE)))
+                .maxSessions(Integer.parseInt(properties.get(prefix + CONFIG_KEY_SESSIONS, String.valueOf(maxSessions))))
+                .batchSize(Integer.parseInt(properties.get(prefix + CONFIG_KEY_BATCH_SIZE, String.valueOf(batchSize))))
+                .maxPendingAsync(Integer.parseInt(properties.get(prefix + CONFIG_KEY_ASYNC_PENDING_MAX, String.valueOf(maxPendingAsync))))
                 ;
     }
 
@@ -120,4 +149,16 @@ public class ActiveMqSenderAddon implements Addon {
         return withRegisterHealthcheck(registerHealthcheck);
     }
 
+    public ActiveMqSenderAddon maxSessions(int maxSessions) {
+        return withMaxSessions(maxSessions);
+    }
+
+    public ActiveMqSenderAddon batchSize(int batchSize) {
+        return withBatchSize(batchSize);
+    }
+
+    public ActiveMqSenderAddon maxPendingAsync(int maxPendingAsync) {
+        return withMaxPendingAsync(maxPendingAsync);
+    }
+
 }
@@ -1,204 +1,377 @@
 package no.obos.util.servicebuilder.mq;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.model.JsonConfig;
 import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.RedeliveryPolicy;
+import org.apache.activemq.command.ActiveMQMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.MDC;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
-import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
-import javax.jms.TemporaryQueue;
 import javax.jms.TextMessage;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static no.obos.util.servicebuilder.model.Constants.X_OBOS_REQUEST_ID;
 
 
+/**
+ * Lytter på en kø med consumers samtidige sesjoner. Hver sesjon behandler sine meldinger én og én.
+ * <p>
+ * Med workers (eller en egen executor) gis meldingene i stedet til en arbeiderpool, og maks workers meldinger er
+ * under behandling samtidig. Meldingene kvitteres da enkeltvis (INDIVIDUAL_ACKNOWLEDGE) etter at de er behandlet,
+ * slik at en melding ikke regnes som mottatt før handleren er ferdig.
+ * <p>
+ * Meldinger kan være TextMessage eller BytesMessage, og deserialiseres én gang med en ObjectReader for handlerens
+ * type, laget fra tjenestens JsonConfig.
+ * <p>
+ * Størrelse, rater og antall consumers for input- og feilkøen måles jevnlig over én egen tilkobling, og kan leses
+ * fra metrics under queue.&lt;kø&gt; uten nye tilkoblinger mot megleren.
+ * <p>
+ * Flytkontroll (se FlowControl) begrenser tempo og antall meldinger under behandling, og pauser consumers når
+ * handleren blir treg eller feiler ofte.
+ */
 @Slf4j
 public class ActiveMqListener implements MessageQueueListener {
 
-    private static final long REQUEUE_TIMEOUT = 1000;
+    public static final int DEFAULT_WORKERS_FOR_EXECUTOR = 16;
+    static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
 
     private final String url;
     private final String user;
     private final String password;
     private final String queueInput;
     private final String queueError;
+    private final int consumers;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final Semaphore workerPermits;
+    private final int workerCount;
+    private final ObjectMapper objectMapper;
+    private final ConsumerSettings settings;
+    private final ActiveMqSessionPool errorSender;
+    private final ErrorQueueRequeuer requeuer;
+    private final QueueMonitor monitor;
+    private final FlowControl flowControl;
 
     private boolean listenerStarted;
+    private ObjectReader payloadReader;
+    private ActiveMQConnection connection;
 
     public ActiveMqListener(String url, String user, String password, String queueInput, String queueError) {
+        this(url, user, password, queueInput, queueError, 1, 0, null, JsonConfig.standard.get(), ConsumerSettings.defaults);
+    }
+
+    /**
+     * @param workers  antall meldinger som behandles samtidig i arbeiderpoolen, 0 for å behandle på sesjonens tråd
+     * @param executor arbeiderpool; null gir en pool med workers tråder
+     */
+    public ActiveMqListener(String url, String user, String password, String queueInput, String queueError, int consumers, int workers, Executor executor, ObjectMapper objectMapper, ConsumerSettings settings) {
         this.url = url;
         this.user = user;
         this.password = password;
         this.queueInput = queueInput;
         this.queueError = queueError;
+        this.consumers = Math.max(1, consumers);
+        this.objectMapper = objectMapper;
+        this.settings = settings;
+        this.errorSender = new ActiveMqSessionPool(url, user, password, queueError, Math.max(this.consumers, workers), false);
+        this.requeuer = new ErrorQueueRequeuer(url, user, password, queueInput, queueError, settings.requeueBatchSize, settings.requeueMaxPerSecond);
+        this.monitor = new QueueMonitor(url, user, password, Arrays.asList(queueInput, queueError), settings.monitorIntervalMillis);
+        this.flowControl = new FlowControl(queueInput, settings);
+        if (executor != null) {
+            this.executor = executor;
+            this.ownedExecutor = null;
+            this.workerCount = workers > 0 ? workers : DEFAULT_WORKERS_FOR_EXECUTOR;
+            this.workerPermits = new Semaphore(workerCount);
+        } else if (workers > 0) {
+            this.ownedExecutor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+                    .setNameFormat("mq-" + queueInput + "-%d")
+                    .setDaemon(true)
+                    .build());
+            this.executor = ownedExecutor;
+            this.workerCount = workers;
+            this.workerPermits = new Semaphore(workers);
+        } else {
+            this.executor = null;
+            this.ownedExecutor = null;
+            this.workerCount = 0;
+            this.workerPermits = null;
+        }
     }
 
     @Override
     public void receiveMessages(MessageHandler handler) {
+        receiveMessages((TypedMessageHandler<?>) handler);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void receiveMessages(TypedMessageHandler<?> handler) {
         if (listenerStarted) {
             throw new RuntimeException("Listener has already been started");
         }
         listenerStarted = true;
 
-        startListener(handler);
+        payloadReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(TypedMessageHandler.payloadType(handler.getClass())));
+        startListener((TypedMessageHandler<Object>) handler);
     }
 
-    private void startListener(MessageHandler handler) {
+    private void startListener(TypedMessageHandler<Object> handler) {
         log.debug("Starting listener...");
         try {
-            ActiveMQConnection connection = ActiveMqUtils.openConnection(user, password, url);
-            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Queue queue = session.createQueue(queueInput);
-            MessageConsumer consumer = session.createConsumer(queue);
-            consumer.setMessageListener(message -> handleMessage(handler, message, session));
-            log.debug("Listening to {}", queueInput);
+            connection = ActiveMqUtils.openConnection(user, password, url);
+            configure(connection);
+            int acknowledgeMode = acknowledgeMode();
+            for (int i = 0; i < consumers; i++) {
+                Session session = connection.createSession(false, acknowledgeMode);
+                Queue queue = session.createQueue(queueInput);
+                MessageConsumer consumer = session.createConsumer(queue);
+                consumer.setMessageListener(message -> onMessage(handler, message, session));
+            }
+            log.debug("Listening to {} with {} consumers", queueInput, consumers);
+            monitor.start();
+            flowControl.registerGauges();
         } catch (Exception e) {
             log.error("Error starting listening to queue {}", queueInput, e);
         }
     }
 
-    private void handleMessage(MessageHandler handler, Message message, Session session) {
-        if (! (message instanceof TextMessage)) {
-            return;
+    private void configure(ActiveMQConnection connection) {
+        if (settings.prefetch >= 0) {
+            connection.getPrefetchPolicy().setQueuePrefetch(settings.prefetch);
         }
-        TextMessage textMessage = (TextMessage) message;
-        String text = null;
-        String requestId = UUID.randomUUID().toString();
-        try {
-            text = textMessage.getText();
-            if (StringUtils.isNotEmpty(message.getJMSCorrelationID())) {
-                requestId = message.getJMSCorrelationID();
-            }
-
-            MDC.put(X_OBOS_REQUEST_ID, requestId);
+        connection.setOptimizeAcknowledge(executor == null && settings.acknowledgeMode == ConsumerSettings.AcknowledgeMode.OPTIMIZED);
+        if (settings.maxRedeliveries > 0) {
+            RedeliveryPolicy redeliveryPolicy = connection.getRedeliveryPolicy();
+            redeliveryPolicy.setMaximumRedeliveries(settings.maxRedeliveries);
+            redeliveryPolicy.setInitialRedeliveryDelay(settings.redeliveryDelayMillis);
+            redeliveryPolicy.setRedeliveryDelay(settings.redeliveryDelayMillis);
+            redeliveryPolicy.setUseExponentialBackOff(settings.redeliveryBackOffMultiplier > 1);
+            redeliveryPolicy.setBackOffMultiplier(settings.redeliveryBackOffMultiplier);
+            // Meldinger som venter på nytt forsøk skal ikke holde igjen resten av køen
+            connection.setNonBlockingRedelivery(true);
+        }
+    }
 
-            log.info("Received message '{}'", text);
+    private int acknowledgeMode() {
+        if (executor != null) {
+            return ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE;
+        }
+        return settings.acknowledgeMode == ConsumerSettings.AcknowledgeMode.DUPS_OK
+                ? Session.DUPS_OK_ACKNOWLEDGE
+                : Session.AUTO_ACKNOWLEDGE;
+    }
 
-            handler.handle(new ObjectMapper().readTree(text));
-        } catch (Exception e) {
-            log.error("Failed to process message", e);
+    /**
+     * Stopper lytteren, venter på meldinger under behandling (høyst STOP_TIMEOUT_MILLIS) og lukker tilkoblingen.
+     */
+    public void stop() {
+        if (connection != null) {
             try {
-                TextMessage errorMessage = session.createTextMessage(text);
-                errorMessage.setJMSCorrelationID(requestId);
-
-                Queue queue = session.createQueue(queueError);
-                MessageProducer errorProducer = session.createProducer(queue);
-                errorProducer.send(errorMessage);
-            } catch (JMSException jmse) {
-                log.error("Failed to create error message", jmse);
+                // Stanser levering og venter på at sesjonenes lyttere er ferdige
+                connection.stop();
+            } catch (JMSException e) {
+                log.warn("Could not stop delivery from {}", url, e);
+            }
+        }
+        // Arbeiderne kvitterer på sesjonene, så tilkoblingen kan ikke lukkes før de er ferdige
+        awaitWorkers();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                log.warn("Could not close connection to {}", url, e);
             }
-        } finally {
-            MDC.remove(X_OBOS_REQUEST_ID);
         }
+        errorSender.stop();
+        requeuer.stop();
+        monitor.stop();
+        flowControl.removeGauges();
     }
 
-    @Override
-    public void requeueFailedMessages() {
+    private void awaitWorkers() {
         try {
-            ActiveMQConnection connection = ActiveMqUtils.openConnection(user, password, url);
-            Session session = ActiveMqUtils.startSession(connection);
-
-            int count = getQueueSize(session, queueError);
-
-            if (count < 1) {
-                return;
+            boolean finished = true;
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdown();
+                finished = ownedExecutor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } else if (workerPermits != null) {
+                // Ekstern executor eies ikke av lytteren; det ventes bare på meldingene som er gitt til den
+                finished = workerPermits.tryAcquire(workerCount, STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (finished) {
+                    workerPermits.release(workerCount);
+                }
             }
+            if (! finished) {
+                log.warn("Messages from {} still being handled after {} ms, closing connection", queueInput, STOP_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            log.info("Requeuing {} failed messages...", count);
-
-            Queue queueErr = session.createQueue(queueError);
-            MessageConsumer consumer = session.createConsumer(queueErr);
-
-            Queue queueRetry = session.createQueue(queueInput);
-            MessageProducer producer = session.createProducer(queueRetry);
-
-            for (int consumed = 0; consumed < count; consumed++) {
-                TextMessage message = (TextMessage) consumer.receive(REQUEUE_TIMEOUT);
-
-                if (message == null) {
-                    continue;
+    private void onMessage(TypedMessageHandler<Object> handler, Message message, Session session) {
+        try {
+            flowControl.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted while waiting to process message", e);
+        }
+        if (executor == null) {
+            handleWithFlowControl(handler, message, session);
+            return;
+        }
+        workerPermits.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                try {
+                    handleAndAcknowledge(handler, message);
+                } finally {
+                    workerPermits.release();
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            workerPermits.release();
+            handleAndAcknowledge(handler, message);
+        }
+    }
 
-                String text = message.getText();
-                String requestId = message.getJMSCorrelationID();
+    private void handleAndAcknowledge(TypedMessageHandler<Object> handler, Message message) {
+        try {
+            handleWithFlowControl(handler, message, null);
+        } finally {
+            try {
+                message.acknowledge();
+            } catch (JMSException e) {
+                log.error("Failed to acknowledge message", e);
+            }
+        }
+    }
 
-                log.info("Requeuing message '{}'", text);
+    private void handleWithFlowControl(TypedMessageHandler<Object> handler, Message message, Session session) {
+        long startNanos = System.nanoTime();
+        boolean handled = false;
+        try {
+            handled = handleMessage(handler, message, session);
+        } finally {
+            flowControl.release(System.nanoTime() - startNanos, ! handled);
+        }
+    }
 
-                try {
-                    TextMessage newMessage = session.createTextMessage(text);
-                    newMessage.setJMSCorrelationID(requestId);
+    /**
+     * @param session sesjonen meldingen kom på, eller null når meldingen behandles utenfor sesjonens tråd
+     * @return false dersom handleren feilet
+     */
+    private boolean handleMessage(TypedMessageHandler<Object> handler, Message message, Session session) {
+        String text = null;
+        byte[] bytes = null;
+        String requestId = UUID.randomUUID().toString();
+        try {
+            if (message instanceof TextMessage) {
+                text = ((TextMessage) message).getText();
+            } else if (message instanceof BytesMessage) {
+                bytes = ActiveMqUtils.readBytes((BytesMessage) message);
+            } else {
+                return true;
+            }
+            if (StringUtils.isNotEmpty(message.getJMSCorrelationID())) {
+                requestId = message.getJMSCorrelationID();
+            }
 
-                    producer.send(newMessage);
-                } catch (Exception e) {
-                    log.error("Failed to requeue message", e);
-                }
+            MDC.put(X_OBOS_REQUEST_ID, requestId);
 
-                message.acknowledge();
-                session.commit();
+            if (text != null) {
+                log.info("Received message '{}'", text);
+                handler.handle(payloadReader.readValue(text));
+            } else {
+                log.info("Received message of {} bytes", bytes.length);
+                handler.handle(payloadReader.readValue(bytes));
             }
-
-            producer.close();
-            consumer.close();
-        } catch (JMSException ex) {
-            throw new MessageQueueException("Failed to requeue failed messages", ex);
+            return true;
+        } catch (Exception e) {
+            if (session != null && willBeRedelivered(message)) {
+                log.warn("Failed to process message, it will be redelivered", e);
+                // Kastes videre til ActiveMQ, som leverer meldingen på nytt etter redeliveryPolicy
+                throw new MessageQueueException("Failed to process message", e);
+            }
+            log.error("Failed to process message", e);
+            sendToErrorQueue(text, bytes, requestId);
+            return false;
+        } finally {
+            MDC.remove(X_OBOS_REQUEST_ID);
         }
     }
 
-    @Override
-    public int getErrorQueueSize() {
-        ActiveMQConnection connection = ActiveMqUtils.openConnection(user, password, url);
-        Session session = ActiveMqUtils.startSession(connection);
-        return getQueueSize(session, queueError);
+    /**
+     * Nye forsøk gjøres bare når meldingen behandles på sesjonens tråd, ikke i arbeiderpoolen.
+     */
+    private boolean willBeRedelivered(Message message) {
+        return settings.maxRedeliveries > 0
+                && message instanceof ActiveMQMessage
+                && ((ActiveMQMessage) message).getRedeliveryCounter() < settings.maxRedeliveries;
     }
 
-    private int getQueueSize(Session session, String queueName) {
-        String size = queryQueueStatistics(session, queueName).get("size");
+    private void sendToErrorQueue(String text, byte[] bytes, String requestId) {
         try {
-            return Integer.parseInt(size);
-        } catch (NumberFormatException e) {
-            throw new MessageQueueException("Failed to read queue size for " + queueName, e);
+            errorSender.execute((session, producer) -> {
+                Message errorMessage;
+                if (bytes != null) {
+                    BytesMessage bytesMessage = session.createBytesMessage();
+                    bytesMessage.writeBytes(bytes);
+                    errorMessage = bytesMessage;
+                } else {
+                    errorMessage = session.createTextMessage(text);
+                }
+                errorMessage.setJMSCorrelationID(requestId);
+                producer.send(errorMessage);
+                return null;
+            });
+        } catch (MessageQueueException e) {
+            log.error("Failed to create error message", e);
         }
     }
 
-    private Map<String, String> queryQueueStatistics(Session session, String queueName) {
-        try {
-            String replyQueueName = "ActiveMQ.Statistics.Destination." + queueName;
-            TemporaryQueue replyQueue = session.createTemporaryQueue();
-            Queue queryQueue = session.createQueue(replyQueueName);
+    @Override
+    public void requeueFailedMessages() {
+        requeuer.requeue(null);
+    }
 
-            MessageProducer producer = session.createProducer(queryQueue);
-            Message emptyMessage = session.createMessage();
-            emptyMessage.setJMSReplyTo(replyQueue);
-            producer.send(emptyMessage);
+    @Override
+    public void requeueFailedMessages(String selector) {
+        requeuer.requeue(selector);
+    }
 
-            MessageConsumer consumer = session.createConsumer(replyQueue);
-            MapMessage reply = (MapMessage) consumer.receive(REQUEUE_TIMEOUT);
+    /**
+     * Leses fra siste måling, som hentes jevnlig over én tilkobling.
+     */
+    @Override
+    public int getErrorQueueSize() {
+        return (int) monitor.statistics(queueError).size;
+    }
 
-            if (reply == null) {
-                return Collections.emptyMap();
-            }
+    public QueueStatistics getInputQueueStatistics() {
+        return monitor.statistics(queueInput);
+    }
 
-            Map<String, String> statistics = new HashMap<>();
-            for (Enumeration<?> e = reply.getMapNames(); e.hasMoreElements(); ) {
-                String name = e.nextElement().toString();
-                statistics.put(name, reply.getString(name));
-            }
-            return statistics;
-        } catch (JMSException e) {
-            throw new MessageQueueException("Could not query statistics for " + queueName, e);
-        }
+    public QueueStatistics getErrorQueueStatistics() {
+        return monitor.statistics(queueError);
     }
 
 }
@@ -2,23 +2,52 @@ package no.obos.util.servicebuilder.mq;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
+import org.slf4j.MDC;
 
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
 import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import static no.obos.util.servicebuilder.model.Constants.X_OBOS_REQUEST_ID;
+
+/**
+ * Sender meldinger over en langlevd tilkobling, med en pool av sesjoner som deles mellom tråder.
+ * <p>
+ * queueMessages sender i transaksjoner på inntil batchSize meldinger. queueMessageAsync sender uten transaksjon og
+ * fullføres når megleren har bekreftet meldingen. Maks maxPendingAsync meldinger kan være ubekreftet samtidig;
+ * utover det venter kallet (mottrykk).
+ */
 @Slf4j
 public class ActiveMqSender implements MessageQueueSender {
+    public static final int DEFAULT_MAX_SESSIONS = 8;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_PENDING_ASYNC = 1_000;
+    static final long PENDING_ASYNC_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
 
-    private final String url;
-    private final String user;
-    private final String password;
     private final String queue;
+    private final int batchSize;
+    private final ActiveMqSessionPool sessionPool;
+    private final ActiveMqSessionPool asyncSessionPool;
+    private final Semaphore pendingAsync;
 
     public ActiveMqSender(String url, String user, String password, String queue) {
-        this.url = url;
-        this.user = user;
-        this.password = password;
+        this(url, user, password, queue, DEFAULT_MAX_SESSIONS, DEFAULT_BATCH_SIZE, DEFAULT_MAX_PENDING_ASYNC);
+    }
+
+    public ActiveMqSender(String url, String user, String password, String queue, int maxSessions, int batchSize, int maxPendingAsync) {
         this.queue = queue;
+        this.batchSize = batchSize;
+        this.sessionPool = new ActiveMqSessionPool(url, user, password, queue, maxSessions, true);
+        this.asyncSessionPool = new ActiveMqSessionPool(url, user, password, queue, maxSessions, false);
+        this.pendingAsync = new Semaphore(maxPendingAsync);
     }
 
     public void queueMessage(JsonNode message) {
@@ -26,16 +55,88 @@ public class ActiveMqSender implements MessageQueueSender {
     }
 
     private void queueMessage(String message) {
-        log.debug("Connecting to {}", url);
-        ActiveMQConnection connection = ActiveMqUtils.openConnection(user, password, url);
-        Session session = ActiveMqUtils.startSession(connection);
+        log.info("Sending message '{}' to {}", message, queue);
+        String requestId = MDC.get(X_OBOS_REQUEST_ID);
+        sessionPool.execute((session, producer) -> {
+            send(session, producer, message, requestId);
+            session.commit();
+            return null;
+        });
+    }
+
+    @Override
+    public void queueMessages(Iterable<JsonNode> messages) {
+        String requestId = MDC.get(X_OBOS_REQUEST_ID);
+        Iterator<JsonNode> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            int sent = sessionPool.execute((session, producer) -> {
+                int count = 0;
+                while (count < batchSize && iterator.hasNext()) {
+                    send(session, producer, iterator.next().toString(), requestId);
+                    count++;
+                }
+                session.commit();
+                return count;
+            });
+            log.info("Sent {} messages to {}", sent, queue);
+        }
+    }
 
+    @Override
+    public CompletionStage<Void> queueMessageAsync(JsonNode message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
         try {
-            log.info("Sending message '{}' to {}", message, queue);
-            ActiveMqUtils.queueMessage(session, message, queue);
-        } finally {
-            ActiveMqUtils.closeConnection(session, connection);
+            if (! pendingAsync.tryAcquire(PENDING_ASYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                result.completeExceptionally(new MessageQueueException("Too many unacknowledged messages to " + queue, null));
+                return result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
         }
+        String text = message.toString();
+        String requestId = MDC.get(X_OBOS_REQUEST_ID);
+        log.debug("Sending message '{}' to {}", text, queue);
+        try {
+            asyncSessionPool.execute((session, producer) -> {
+                TextMessage textMessage = session.createTextMessage(text);
+                textMessage.setJMSCorrelationID(requestId);
+                ((ActiveMQMessageProducer) producer).send(textMessage, new AsyncCallback() {
+                    @Override
+                    public void onSuccess() {
+                        pendingAsync.release();
+                        result.complete(null);
+                    }
+
+                    @Override
+                    public void onException(JMSException exception) {
+                        pendingAsync.release();
+                        result.completeExceptionally(new MessageQueueException("Could not send to " + queue, exception));
+                    }
+                });
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (! result.isDone()) {
+                pendingAsync.release();
+                result.completeExceptionally(e);
+            }
+        }
+        return result;
     }
 
+    /**
+     * Lukker tilkoblingen og alle sesjoner.
+     */
+    public void stop() {
+        sessionPool.stop();
+        asyncSessionPool.stop();
+    }
+
+    private static void send(Session session, MessageProducer producer, String text, String requestId) throws JMSException {
+        TextMessage textMessage = session.createTextMessage(text);
+        textMessage.setJMSCorrelationID(requestId);
+        producer.send(textMessage);
+    }
 }
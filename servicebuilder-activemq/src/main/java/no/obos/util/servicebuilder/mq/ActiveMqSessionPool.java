@@ -0,0 +1,179 @@
+package no.obos.util.servicebuilder.mq;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQConnection;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Én langlevd tilkobling til ActiveMQ, med en pool av sesjoner og producere mot én kø.
+ * <p>
+ * En sesjon brukes av én tråd om gangen. Feiler en sending kastes sesjonen, og er tilkoblingen død opprettes en ny
+ * ved neste sending. Sesjoner fra en gammel tilkobling lukkes når de hentes ut av poolen.
+ */
+@Slf4j
+class ActiveMqSessionPool {
+    static final long BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String queueName;
+    private final boolean transacted;
+    private final BlockingQueue<PooledSession> idle;
+    private final Semaphore permits;
+
+    private ActiveMQConnection connection;
+    private int generation;
+    private volatile boolean stopped;
+
+    ActiveMqSessionPool(String url, String user, String password, String queueName, int maxSessions, boolean transacted) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queueName = queueName;
+        this.transacted = transacted;
+        this.idle = new ArrayBlockingQueue<>(maxSessions);
+        this.permits = new Semaphore(maxSessions);
+    }
+
+    <T> T execute(SessionAction<T> action) {
+        if (stopped) {
+            throw new MessageQueueException("Session pool for " + queueName + " is stopped", null);
+        }
+        acquire();
+        PooledSession pooled = null;
+        try {
+            pooled = borrow();
+            T result = action.run(pooled.session, pooled.producer);
+            if (! idle.offer(pooled)) {
+                pooled.close();
+            }
+            pooled = null;
+            return result;
+        } catch (JMSException ex) {
+            throw new MessageQueueException("Could not send to " + queueName, ex);
+        } finally {
+            if (pooled != null) {
+                pooled.close();
+                invalidateIfBroken(pooled.generation);
+            }
+            permits.release();
+        }
+    }
+
+    void stop() {
+        stopped = true;
+        PooledSession pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.close();
+        }
+        synchronized (this) {
+            closeConnection();
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (! permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new MessageQueueException("Timed out waiting for a session to " + queueName, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted waiting for a session to " + queueName, e);
+        }
+    }
+
+    private PooledSession borrow() throws JMSException {
+        PooledSession pooled;
+        while ((pooled = idle.poll()) != null) {
+            if (pooled.generation == currentGeneration()) {
+                return pooled;
+            }
+            pooled.close();
+        }
+        return create();
+    }
+
+    private synchronized PooledSession create() throws JMSException {
+        if (connection == null || connection.isClosed() || connection.isTransportFailed()) {
+            closeConnection();
+            log.debug("Connecting to {}", url);
+            ActiveMQConnection newConnection = ActiveMqUtils.openConnection(user, password, url);
+            generation++;
+            int connectionGeneration = generation;
+            newConnection.setExceptionListener(e -> {
+                log.warn("Connection to {} failed: {}", url, e.toString());
+                invalidate(connectionGeneration);
+            });
+            connection = newConnection;
+        }
+        Session session = ActiveMqUtils.startSession(connection, transacted);
+        try {
+            MessageProducer producer = session.createProducer(session.createQueue(queueName));
+            return new PooledSession(session, producer, generation);
+        } catch (JMSException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private synchronized int currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void invalidateIfBroken(int sessionGeneration) {
+        if (sessionGeneration == generation && connection != null && (connection.isClosed() || connection.isTransportFailed())) {
+            invalidate(sessionGeneration);
+        }
+    }
+
+    private synchronized void invalidate(int connectionGeneration) {
+        if (connectionGeneration == generation) {
+            closeConnection();
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (JMSException | RuntimeException e) {
+            log.debug("Could not close connection to {}", url, e);
+        }
+        connection = null;
+        generation++;
+    }
+
+    interface SessionAction<T> {
+        T run(Session session, MessageProducer producer) throws JMSException;
+    }
+
+    private static class PooledSession {
+        final Session session;
+        final MessageProducer producer;
+        final int generation;
+
+        PooledSession(Session session, MessageProducer producer, int generation) {
+            this.session = session;
+            this.producer = producer;
+            this.generation = generation;
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException | RuntimeException e) {
+                log.debug("Could not close session", e);
+            }
+        }
+    }
+}
@@ -1,36 +1,16 @@
 package no.obos.util.servicebuilder.mq;
 
 import org.apache.activemq.ActiveMQConnection;
-import org.slf4j.MDC;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
-import javax.jms.MessageProducer;
-import javax.jms.Queue;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 import java.net.URISyntaxException;
 
-import static no.obos.util.servicebuilder.model.Constants.X_OBOS_REQUEST_ID;
-
 class ActiveMqUtils {
 
     private static final String BROKER_URL_JUNIT = "vm://localhost";
 
-    static void queueMessage(Session session, String text, String queueName) {
-        try {
-            Queue queue = session.createQueue(queueName);
-            MessageProducer producer = session.createProducer(queue);
-
-            TextMessage message = session.createTextMessage(text);
-            message.setJMSCorrelationID(MDC.get(X_OBOS_REQUEST_ID));
-
-            producer.send(message);
-            session.commit();
-        } catch (JMSException ex) {
-            throw new MessageQueueException("Could not queue message '" + text + "'", ex);
-        }
-    }
-
     static ActiveMQConnection openConnection(String user, String password, String url) {
         String brokerUrl = brokerUrl(url);
         try {
@@ -51,13 +31,23 @@ class ActiveMqUtils {
     }
 
     static Session startSession(ActiveMQConnection connection) {
+        return startSession(connection, true);
+    }
+
+    static Session startSession(ActiveMQConnection connection, boolean transacted) {
         try {
-            return connection.createSession(true, Session.CLIENT_ACKNOWLEDGE);
+            return connection.createSession(transacted, transacted ? Session.CLIENT_ACKNOWLEDGE : Session.AUTO_ACKNOWLEDGE);
         } catch (JMSException ex) {
             throw new MessageQueueException("Could not start ActiveMQ session ", ex);
         }
     }
 
+    static byte[] readBytes(BytesMessage message) throws JMSException {
+        byte[] bytes = new byte[(int) message.getBodyLength()];
+        message.readBytes(bytes);
+        return bytes;
+    }
+
     static void closeConnection(Session session, ActiveMQConnection connection) {
         try {
             session.close();
@@ -0,0 +1,156 @@
+package no.obos.util.servicebuilder.mq;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.experimental.Wither;
+
+/**
+ * Innstillinger for hvordan ActiveMqListener henter og kvitterer meldinger, flytter feilede meldinger tilbake, måler køene og begrenser tempoet.
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+@EqualsAndHashCode
+public class ConsumerSettings {
+    public enum AcknowledgeMode {
+        /**
+         * Hver melding kvitteres når handleren er ferdig.
+         */
+        AUTO,
+        /**
+         * Kvitteringer samles og sendes i bolker. Meldinger kan bli levert på nytt etter en krasj.
+         */
+        OPTIMIZED,
+        /**
+         * Lat kvittering, for idempotente handlere. Meldinger kan bli levert mer enn én gang.
+         */
+        DUPS_OK
+    }
+
+    /**
+     * Antall meldinger megleren sender til hver consumer på forskudd. Negativ verdi bruker ActiveMQ sin standard.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int prefetch;
+
+    /**
+     * Gjelder når meldinger behandles på sesjonens tråd. Med arbeiderpool kvitteres alltid hver melding for seg.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final AcknowledgeMode acknowledgeMode;
+
+    /**
+     * Antall nye forsøk før en feilet melding legges på feilkøen. 0 legger den på feilkøen med en gang.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxRedeliveries;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final long redeliveryDelayMillis;
+
+    /**
+     * Ventetiden ganges med denne for hvert nye forsøk. 1 gir fast ventetid.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final double redeliveryBackOffMultiplier;
+
+    /**
+     * Antall meldinger per transaksjon når feilede meldinger flyttes tilbake til inputkøen.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int requeueBatchSize;
+
+    /**
+     * Maks antall meldinger per sekund som flyttes tilbake til inputkøen. 0 er ubegrenset.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int requeueMaxPerSecond;
+
+    /**
+     * Hvor ofte kø-statistikk hentes fra megleren.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final long monitorIntervalMillis;
+
+    /**
+     * Maks antall meldinger per sekund som behandles. 0 er ubegrenset.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxPerSecond;
+
+    /**
+     * Maks antall meldinger under behandling samtidig, på tvers av consumers og workers. 0 er ubegrenset.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxInFlight;
+
+    /**
+     * Consumers pauses når snittiden for behandling går over denne. 0 slår av.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final long pauseLatencyMillis;
+
+    /**
+     * Consumers pauses når andelen feilede meldinger (0-1) når denne. 0 slår av.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final double pauseErrorRate;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final long pauseMillis;
+
+    public static final ConsumerSettings defaults = new ConsumerSettings(- 1, AcknowledgeMode.AUTO, 0, 1000, 2, 100, 500, 30_000, 0, 0, 0, 0, 30_000);
+
+    public ConsumerSettings prefetch(int prefetch) {
+        return withPrefetch(prefetch);
+    }
+
+    public ConsumerSettings acknowledgeMode(AcknowledgeMode acknowledgeMode) {
+        return withAcknowledgeMode(acknowledgeMode);
+    }
+
+    public ConsumerSettings maxRedeliveries(int maxRedeliveries) {
+        return withMaxRedeliveries(maxRedeliveries);
+    }
+
+    public ConsumerSettings redeliveryDelayMillis(long redeliveryDelayMillis) {
+        return withRedeliveryDelayMillis(redeliveryDelayMillis);
+    }
+
+    public ConsumerSettings redeliveryBackOffMultiplier(double redeliveryBackOffMultiplier) {
+        return withRedeliveryBackOffMultiplier(redeliveryBackOffMultiplier);
+    }
+
+    public ConsumerSettings requeueBatchSize(int requeueBatchSize) {
+        return withRequeueBatchSize(requeueBatchSize);
+    }
+
+    public ConsumerSettings requeueMaxPerSecond(int requeueMaxPerSecond) {
+        return withRequeueMaxPerSecond(requeueMaxPerSecond);
+    }
+
+    public ConsumerSettings monitorIntervalMillis(long monitorIntervalMillis) {
+        return withMonitorIntervalMillis(monitorIntervalMillis);
+    }
+
+    public ConsumerSettings maxPerSecond(int maxPerSecond) {
+        return withMaxPerSecond(maxPerSecond);
+    }
+
+    public ConsumerSettings maxInFlight(int maxInFlight) {
+        return withMaxInFlight(maxInFlight);
+    }
+
+    public ConsumerSettings pauseLatencyMillis(long pauseLatencyMillis) {
+        return withPauseLatencyMillis(pauseLatencyMillis);
+    }
+
+    public ConsumerSettings pauseErrorRate(double pauseErrorRate) {
+        return withPauseErrorRate(pauseErrorRate);
+    }
+
+    public ConsumerSettings pauseMillis(long pauseMillis) {
+        return withPauseMillis(pauseMillis);
+    }
+}
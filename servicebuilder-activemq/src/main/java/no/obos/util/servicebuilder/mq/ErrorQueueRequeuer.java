@@ -0,0 +1,149 @@
+package no.obos.util.servicebuilder.mq;
+
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flytter meldinger fra feilkøen tilbake til inputkøen i transaksjoner på batchSize meldinger, med maks
+ * maxPerSecond meldinger i sekundet. Antall meldinger som matcher telles ved start, og flyttingen stopper etter så
+ * mange, slik at meldinger som feiler på nytt havner bak i feilkøen og ikke går i ring. Grensen avhenger ikke av
+ * klokkene til produsent og megler. Fremdrift logges per batch og telles i queue.&lt;kø&gt;.requeued.
+ */
+@Slf4j
+class ErrorQueueRequeuer {
+    static final long FIRST_RECEIVE_TIMEOUT_MILLIS = 1000;
+    static final long RECEIVE_TIMEOUT_MILLIS = 100;
+
+    private final String queueInput;
+    private final String queueError;
+    private final int batchSize;
+    private final int maxPerSecond;
+    private final ActiveMqSessionPool sessionPool;
+    private final Counter requeued;
+
+    ErrorQueueRequeuer(String url, String user, String password, String queueInput, String queueError, int batchSize, int maxPerSecond) {
+        this.queueInput = queueInput;
+        this.queueError = queueError;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPerSecond = maxPerSecond;
+        this.sessionPool = new ActiveMqSessionPool(url, user, password, queueInput, 1, true);
+        this.requeued = MetricsRegistry.counter("queue." + MetricsRegistry.segment(queueError) + ".requeued");
+    }
+
+    /**
+     * @param selector JMS-selektor for å flytte bare noen av meldingene, eller null for alle
+     * @return antall meldinger som er flyttet
+     */
+    int requeue(String selector) {
+        long startNanos = System.nanoTime();
+        int moved = sessionPool.execute((session, producer) -> {
+            Queue errorQueue = session.createQueue(queueError);
+            int limit = countMessages(session, errorQueue, selector);
+            log.info("Requeuing {} failed messages from {} to {} matching '{}'", limit, queueError, queueInput, selector);
+            if (limit == 0) {
+                return 0;
+            }
+            MessageConsumer consumer = session.createConsumer(errorQueue, selector);
+            try {
+                int total = 0;
+                int batch;
+                while (total < limit && (batch = moveBatch(session, consumer, producer, Math.min(batchSize, limit - total))) > 0) {
+                    total += batch;
+                    requeued.inc(batch);
+                    log.info("Requeued {} messages from {} to {}", total, queueError, queueInput);
+                    throttle(total, startNanos);
+                }
+                return total;
+            } finally {
+                consumer.close();
+            }
+        });
+        log.info("Done requeuing {} messages from {} in {} ms", moved, queueError, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return moved;
+    }
+
+    void stop() {
+        sessionPool.stop();
+    }
+
+    private int moveBatch(Session session, MessageConsumer consumer, MessageProducer producer, int maxCount) throws JMSException {
+        int count = 0;
+        while (count < maxCount) {
+            Message message = consumer.receive(count == 0 ? FIRST_RECEIVE_TIMEOUT_MILLIS : RECEIVE_TIMEOUT_MILLIS);
+            if (message == null) {
+                break;
+            }
+            producer.send(copy(session, message));
+            count++;
+        }
+        if (count > 0) {
+            session.commit();
+        }
+        return count;
+    }
+
+    private void throttle(int total, long startNanos) {
+        if (maxPerSecond <= 0) {
+            return;
+        }
+        long aheadNanos = TimeUnit.SECONDS.toNanos(total) / maxPerSecond - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessageQueueException("Interrupted while requeuing messages from " + queueError, e);
+            }
+        }
+    }
+
+    /**
+     * Ny melding med samme innhold og korrelasjons-id, uten historikk for levering.
+     */
+    static Message copy(Session session, Message message) throws JMSException {
+        Message copy;
+        if (message instanceof TextMessage) {
+            copy = session.createTextMessage(((TextMessage) message).getText());
+        } else if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = session.createBytesMessage();
+            bytesMessage.writeBytes(ActiveMqUtils.readBytes((BytesMessage) message));
+            copy = bytesMessage;
+        } else {
+            return message;
+        }
+        copy.setJMSCorrelationID(message.getJMSCorrelationID());
+        log.debug("Requeuing message {}", message.getJMSMessageID());
+        return copy;
+    }
+
+    /**
+     * Antall meldinger på køen som matcher selektoren nå. Meldinger som legges på etterpå kommer bak disse i køen.
+     */
+    static int countMessages(Session session, Queue queue, String selector) throws JMSException {
+        QueueBrowser browser = session.createBrowser(queue, selector);
+        try {
+            int count = 0;
+            Enumeration<?> messages = browser.getEnumeration();
+            while (messages.hasMoreElements()) {
+                messages.nextElement();
+                count++;
+            }
+            return count;
+        } finally {
+            browser.close();
+        }
+    }
+}
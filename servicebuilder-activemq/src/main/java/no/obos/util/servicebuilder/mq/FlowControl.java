@@ -0,0 +1,160 @@
+package no.obos.util.servicebuilder.mq;
+
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Flytkontroll for ActiveMqListener: maks meldinger per sekund, maks meldinger under behandling, og pause når
+ * handleren blir treg eller feiler.
+ * <p>
+ * acquire kalles på sesjonens tråd før meldingen behandles, og blokkerer sesjonen til det er plass. Megleren sender da
+ * ikke flere meldinger enn prefetch til consumeren, slik at køen fylles opp i stedet for at handleren overbelastes.
+ * Etter hver WINDOW_SIZE behandlede meldinger sjekkes snittid og feilandel. Går en av dem over grensen, pauses alle
+ * consumers i pauseMillis før de fortsetter, i stedet for at meldinger feiler videre til feilkøen.
+ * Tilstanden eksponeres som metrics under queue.&lt;kø&gt;.flow.
+ */
+@Slf4j
+class FlowControl {
+    static final int WINDOW_SIZE = 20;
+
+    private final String queueName;
+    private final int maxPerSecond;
+    private final Semaphore inFlightPermits;
+    private final long pauseLatencyNanos;
+    private final double pauseErrorRate;
+    private final long pauseNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter throttled;
+    private final Counter pauses;
+    private final String inFlightGaugeName;
+    private final String pausedGaugeName;
+    private final Supplier<Number> inFlightGauge = () -> inFlight.get();
+    private final Supplier<Number> pausedGauge = () -> isPaused() ? 1 : 0;
+
+    private long nextPermitNanos = System.nanoTime();
+    private long windowNanos;
+    private int windowSamples;
+    private int windowFailures;
+    private volatile boolean paused;
+    private volatile long pausedUntilNanos;
+
+    FlowControl(String queueName, ConsumerSettings settings) {
+        this.queueName = queueName;
+        this.maxPerSecond = settings.maxPerSecond;
+        this.inFlightPermits = settings.maxInFlight > 0 ? new Semaphore(settings.maxInFlight) : null;
+        this.pauseLatencyNanos = TimeUnit.MILLISECONDS.toNanos(settings.pauseLatencyMillis);
+        this.pauseErrorRate = settings.pauseErrorRate;
+        this.pauseNanos = TimeUnit.MILLISECONDS.toNanos(settings.pauseMillis);
+
+        String prefix = "queue." + MetricsRegistry.segment(queueName) + ".flow";
+        this.throttled = MetricsRegistry.counter(prefix + ".throttled");
+        this.pauses = MetricsRegistry.counter(prefix + ".pauses");
+        this.inFlightGaugeName = prefix + ".inflight";
+        this.pausedGaugeName = prefix + ".paused";
+    }
+
+    /**
+     * Målerne registreres når lytteren starter og fjernes når den stopper, slik at bare lyttere som kjører vises.
+     */
+    void registerGauges() {
+        MetricsRegistry.registerGauge(inFlightGaugeName, inFlightGauge);
+        MetricsRegistry.registerGauge(pausedGaugeName, pausedGauge);
+    }
+
+    void removeGauges() {
+        MetricsRegistry.removeGauge(inFlightGaugeName, inFlightGauge);
+        MetricsRegistry.removeGauge(pausedGaugeName, pausedGauge);
+    }
+
+    /**
+     * Venter til meldingen kan behandles. Hvert kall må følges av ett kall til release.
+     */
+    void acquire() throws InterruptedException {
+        waitWhilePaused();
+        waitForRate();
+        if (inFlightPermits != null && ! inFlightPermits.tryAcquire()) {
+            throttled.inc();
+            inFlightPermits.acquire();
+        }
+        inFlight.incrementAndGet();
+    }
+
+    void release(long elapsedNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        if (inFlightPermits != null) {
+            inFlightPermits.release();
+        }
+        if (pauseLatencyNanos > 0 || pauseErrorRate > 0) {
+            record(elapsedNanos, failed, System.nanoTime());
+        }
+    }
+
+    boolean isPaused() {
+        return paused && pausedUntilNanos - System.nanoTime() > 0;
+    }
+
+    synchronized void record(long elapsedNanos, boolean failed, long nowNanos) {
+        windowNanos += elapsedNanos;
+        windowSamples++;
+        if (failed) {
+            windowFailures++;
+        }
+        if (windowSamples < WINDOW_SIZE) {
+            return;
+        }
+        long averageNanos = windowNanos / windowSamples;
+        double errorRate = (double) windowFailures / windowSamples;
+        windowNanos = 0;
+        windowSamples = 0;
+        windowFailures = 0;
+
+        boolean tooSlow = pauseLatencyNanos > 0 && averageNanos > pauseLatencyNanos;
+        boolean failing = pauseErrorRate > 0 && errorRate >= pauseErrorRate;
+        if ((tooSlow || failing) && ! isPaused()) {
+            pausedUntilNanos = nowNanos + pauseNanos;
+            paused = true;
+            pauses.inc();
+            log.warn("Pausing consumers on {} for {} ms, average handling time {} ms, error rate {}",
+                    queueName, TimeUnit.NANOSECONDS.toMillis(pauseNanos), TimeUnit.NANOSECONDS.toMillis(averageNanos), errorRate);
+        }
+    }
+
+    private void waitWhilePaused() throws InterruptedException {
+        if (! paused) {
+            return;
+        }
+        long remainingNanos;
+        while ((remainingNanos = pausedUntilNanos - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remainingNanos);
+        }
+        synchronized (this) {
+            if (paused && ! isPaused()) {
+                paused = false;
+                log.info("Resuming consumers on {}", queueName);
+            }
+        }
+    }
+
+    private void waitForRate() throws InterruptedException {
+        if (maxPerSecond <= 0) {
+            return;
+        }
+        long aheadNanos;
+        synchronized (this) {
+            long nowNanos = System.nanoTime();
+            long slotNanos = nextPermitNanos - nowNanos > 0 ? nextPermitNanos : nowNanos;
+            nextPermitNanos = slotNanos + TimeUnit.SECONDS.toNanos(1) / maxPerSecond;
+            aheadNanos = slotNanos - nowNanos;
+        }
+        if (aheadNanos > 0) {
+            throttled.inc();
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package no.obos.util.servicebuilder.mq;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-public interface MessageHandler {
+public interface MessageHandler extends TypedMessageHandler<JsonNode> {
+    @Override
     void handle(JsonNode message);
 }
@@ -1,9 +1,34 @@
 package no.obos.util.servicebuilder.mq;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.obos.util.servicebuilder.model.JsonConfig;
+
 public interface MessageQueueListener {
     void receiveMessages(MessageHandler handler);
 
+    /**
+     * Standardimplementasjonen tar imot meldingene som JsonNode via receiveMessages(MessageHandler), og konverterer dem
+     * til handlerens type med JsonConfig.standard. Implementasjoner som kan deserialisere direkte bør overstyre den.
+     */
+    @SuppressWarnings("unchecked")
+    default void receiveMessages(TypedMessageHandler<?> handler) {
+        if (handler instanceof MessageHandler) {
+            receiveMessages((MessageHandler) handler);
+            return;
+        }
+        ObjectMapper objectMapper = JsonConfig.standard.get();
+        JavaType payloadType = objectMapper.getTypeFactory().constructType(TypedMessageHandler.payloadType(handler.getClass()));
+        TypedMessageHandler<Object> typedHandler = (TypedMessageHandler<Object>) handler;
+        receiveMessages((MessageHandler) message -> typedHandler.handle(objectMapper.convertValue(message, payloadType)));
+    }
+
     void requeueFailedMessages();
 
+    /**
+     * Flytter bare feilede meldinger som passer med JMS-selektoren. Null flytter alle, som requeueFailedMessages().
+     */
+    void requeueFailedMessages(String selector);
+
     int getErrorQueueSize();
 }
@@ -2,6 +2,30 @@ package no.obos.util.servicebuilder.mq;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface MessageQueueSender {
     void queueMessage(JsonNode message);
+
+    /**
+     * Sender mange meldinger, om mulig i færre transaksjoner.
+     */
+    default void queueMessages(Iterable<JsonNode> messages) {
+        messages.forEach(this::queueMessage);
+    }
+
+    /**
+     * Fullføres når megleren har bekreftet meldingen.
+     */
+    default CompletionStage<Void> queueMessageAsync(JsonNode message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            queueMessage(message);
+            result.complete(null);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 }
@@ -0,0 +1,266 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import org.apache.activemq.ActiveMQConnection;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Måler køer jevnlig over én langlevd tilkobling, via ActiveMQ sin statistics-plugin, og holder siste måling.
+ * <p>
+ * Målingene eksponeres som metrics under queue.&lt;kø&gt; og leses av ActiveMqListener, slik at hyppige helsesjekker
+ * ikke gir nye tilkoblinger mot megleren. All kommunikasjon med megleren skjer på monitorens egen tråd.
+ * Svar knyttes til forespørselen med JMSCorrelationID, og målinger eldre enn MAX_AGE_INTERVALS intervaller regnes
+ * som utdaterte, slik at en nede megler ikke skjules bak siste kjente verdi.
+ */
+@Slf4j
+class QueueMonitor {
+    static final long REPLY_TIMEOUT_MILLIS = 1000;
+    static final long REFRESH_TIMEOUT_MILLIS = 10_000;
+    static final int MAX_AGE_INTERVALS = 3;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<String> queueNames;
+    private final long intervalMillis;
+    private final Map<String, QueueStatistics> statistics = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new LinkedHashMap<>();
+    private long requestCount;
+
+    private ScheduledExecutorService scheduler;
+    private ActiveMQConnection connection;
+    private Session session;
+    private TemporaryQueue replyQueue;
+    private MessageConsumer replyConsumer;
+    private MessageProducer producer;
+
+    QueueMonitor(String url, String user, String password, List<String> queueNames, long intervalMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queueNames = ImmutableList.copyOf(queueNames);
+        this.intervalMillis = intervalMillis;
+        for (String queueName : queueNames) {
+            String prefix = "queue." + MetricsRegistry.segment(queueName);
+            gauges.put(prefix + ".size", () -> value(queueName, it -> it.size));
+            gauges.put(prefix + ".consumers", () -> value(queueName, it -> it.consumerCount));
+            gauges.put(prefix + ".enqueue.rate", () -> value(queueName, it -> it.enqueueRatePerSecond));
+            gauges.put(prefix + ".dequeue.rate", () -> value(queueName, it -> it.dequeueRatePerSecond));
+        }
+    }
+
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("mq-monitor-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.scheduleWithFixedDelay(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        // Målerne registreres bare for monitorer som kjører, og fjernes igjen i stop
+        gauges.forEach(MetricsRegistry::registerGauge);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+            gauges.forEach(MetricsRegistry::removeGauge);
+        }
+        closeConnection();
+    }
+
+    /**
+     * Siste måling, eller en ny måling dersom køen ikke er målt ennå eller siste måling er utdatert.
+     *
+     * @throws MessageQueueException dersom megleren ikke svarer
+     */
+    QueueStatistics statistics(String queueName) {
+        QueueStatistics cached = current(queueName);
+        if (cached != null) {
+            return cached;
+        }
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            start();
+            scheduler = this.scheduler;
+        }
+        try {
+            scheduler.submit(this::sample).get(REFRESH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted while reading statistics for " + queueName, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new MessageQueueException("Could not read statistics for " + queueName, e);
+        }
+        cached = current(queueName);
+        if (cached == null) {
+            throw new MessageQueueException("No current statistics available for " + queueName, null);
+        }
+        return cached;
+    }
+
+    /**
+     * Siste måling, eller null dersom den mangler eller er eldre enn MAX_AGE_INTERVALS intervaller.
+     */
+    private QueueStatistics current(String queueName) {
+        QueueStatistics cached = statistics.get(queueName);
+        return cached != null && isCurrent(cached, intervalMillis, System.currentTimeMillis()) ? cached : null;
+    }
+
+    static boolean isCurrent(QueueStatistics statistics, long intervalMillis, long nowMillis) {
+        return nowMillis - statistics.sampledAtMillis <= MAX_AGE_INTERVALS * intervalMillis + REPLY_TIMEOUT_MILLIS;
+    }
+
+    private void sample() {
+        for (String queueName : queueNames) {
+            try {
+                Map<String, Object> reply = query(queueName);
+                if (reply != null) {
+                    statistics.put(queueName, toStatistics(queueName, reply, statistics.get(queueName), System.currentTimeMillis()));
+                }
+            } catch (JMSException | RuntimeException e) {
+                log.warn("Could not read statistics for {}: {}", queueName, e.toString());
+                closeConnection();
+            }
+        }
+    }
+
+    private Map<String, Object> query(String queueName) throws JMSException {
+        if (connection == null || connection.isClosed() || connection.isTransportFailed()) {
+            connect();
+        }
+        String correlationId = queueName + "-" + requestCount++;
+        Message request = session.createMessage();
+        request.setJMSReplyTo(replyQueue);
+        request.setJMSCorrelationID(correlationId);
+        producer.send(session.createQueue("ActiveMQ.Statistics.Destination." + queueName), request);
+
+        MapMessage reply = receiveReply(correlationId, queueName);
+        if (reply == null) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (Enumeration<?> names = reply.getMapNames(); names.hasMoreElements(); ) {
+            String name = names.nextElement().toString();
+            values.put(name, reply.getObject(name));
+        }
+        return values;
+    }
+
+    /**
+     * Svar som kommer etter tidsavbruddet leses og forkastes her, i stedet for å bli tatt for svaret til neste kø.
+     */
+    private MapMessage receiveReply(String correlationId, String queueName) throws JMSException {
+        long deadlineMillis = System.currentTimeMillis() + REPLY_TIMEOUT_MILLIS;
+        long remainingMillis;
+        while ((remainingMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+            Message reply = replyConsumer.receive(remainingMillis);
+            if (reply == null) {
+                return null;
+            }
+            if (reply instanceof MapMessage && isReplyTo(correlationId, queueName, (MapMessage) reply)) {
+                return (MapMessage) reply;
+            }
+            log.debug("Discarding stale statistics reply {}", reply.getJMSCorrelationID());
+        }
+        return null;
+    }
+
+    /**
+     * Eldre meglere setter ikke JMSCorrelationID på svaret, og da brukes destinationName (queue://&lt;kø&gt;).
+     */
+    private static boolean isReplyTo(String correlationId, String queueName, MapMessage reply) throws JMSException {
+        if (reply.getJMSCorrelationID() != null) {
+            return correlationId.equals(reply.getJMSCorrelationID());
+        }
+        String destinationName = reply.getString("destinationName");
+        return destinationName != null && destinationName.endsWith("://" + queueName);
+    }
+
+    static QueueStatistics toStatistics(String queueName, Map<String, Object> reply, QueueStatistics previous, long nowMillis) {
+        long enqueueCount = longValue(reply.get("enqueueCount"));
+        long dequeueCount = longValue(reply.get("dequeueCount"));
+        double enqueueRate = 0;
+        double dequeueRate = 0;
+        if (previous != null && nowMillis > previous.sampledAtMillis) {
+            double seconds = (nowMillis - previous.sampledAtMillis) / 1000.0;
+            enqueueRate = Math.max(0, enqueueCount - previous.enqueueCount) / seconds;
+            dequeueRate = Math.max(0, dequeueCount - previous.dequeueCount) / seconds;
+        }
+        return new QueueStatistics(queueName, longValue(reply.get("size")), enqueueCount, dequeueCount,
+                longValue(reply.get("consumerCount")), enqueueRate, dequeueRate, nowMillis);
+    }
+
+    private void connect() throws JMSException {
+        closeConnection();
+        connection = ActiveMqUtils.openConnection(user, password, url);
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        replyQueue = session.createTemporaryQueue();
+        replyConsumer = session.createConsumer(replyQueue);
+        producer = session.createProducer(null);
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException | RuntimeException e) {
+                log.debug("Could not close monitoring connection to {}", url, e);
+            }
+        }
+        connection = null;
+        session = null;
+        replyQueue = null;
+        replyConsumer = null;
+        producer = null;
+    }
+
+    private Number value(String queueName, Function<QueueStatistics, Number> field) {
+        QueueStatistics cached = current(queueName);
+        return cached != null ? field.apply(cached) : null;
+    }
+
+    private static long longValue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+}
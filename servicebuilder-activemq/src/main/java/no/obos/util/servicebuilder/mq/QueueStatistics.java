@@ -0,0 +1,25 @@
+package no.obos.util.servicebuilder.mq;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Statistikk for én kø, slik den var ved siste måling.
+ */
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class QueueStatistics {
+    public final String queueName;
+    public final long size;
+    public final long enqueueCount;
+    public final long dequeueCount;
+    public final long consumerCount;
+    /**
+     * Meldinger inn per sekund siden forrige måling, 0 ved første måling.
+     */
+    public final double enqueueRatePerSecond;
+    public final double dequeueRatePerSecond;
+    public final long sampledAtMillis;
+}
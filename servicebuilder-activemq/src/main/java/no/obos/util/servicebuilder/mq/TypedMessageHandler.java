@@ -0,0 +1,25 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.google.common.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+
+/**
+ * Handler for meldinger som deserialiseres til T. T utledes fra handler-klassen når lytteren startes.
+ */
+public interface TypedMessageHandler<T> {
+    void handle(T message);
+
+    /**
+     * Meldingstypen T for en handler-klasse, for lyttere som skal deserialisere meldingene.
+     */
+    static Type payloadType(Class<?> handlerClass) {
+        Type type = TypeToken.of(handlerClass).resolveType(TypedMessageHandler.class.getTypeParameters()[0]).getType();
+        if (type instanceof TypeVariable) {
+            throw new IllegalArgumentException("Could not resolve message type for " + handlerClass.getName()
+                    + ", implement TypedMessageHandler with a concrete type");
+        }
+        return type;
+    }
+}
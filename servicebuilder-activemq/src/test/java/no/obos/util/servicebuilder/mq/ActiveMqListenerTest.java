@@ -0,0 +1,151 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import no.obos.util.servicebuilder.model.JsonConfig;
+import org.apache.activemq.ActiveMQConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.jms.BytesMessage;
+import javax.jms.Session;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActiveMqListenerTest {
+    private static final String URL = "vm://localhost?broker.persistent=false";
+    private static final String QUEUE_INPUT = "listener.test.input";
+    private static final String QUEUE_ERROR = "listener.test.error";
+
+    private final ActiveMqSender sender = new ActiveMqSender(URL, null, null, QUEUE_INPUT);
+    private ActiveMqListener listener;
+
+    @After
+    public void stop() {
+        sender.stop();
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void workersHandleMessagesConcurrently() throws Exception {
+        int messages = 4;
+        CountDownLatch allStarted = new CountDownLatch(messages);
+        CountDownLatch allHandled = new CountDownLatch(messages);
+        listener = new ActiveMqListener(URL, null, null, QUEUE_INPUT, QUEUE_ERROR, 1, messages, null, JsonConfig.standard.get(), ConsumerSettings.defaults);
+        listener.receiveMessages(message -> {
+            allStarted.countDown();
+            try {
+                // Fullføres bare dersom alle meldingene behandles samtidig
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            allHandled.countDown();
+        });
+
+        for (int i = 0; i < messages; i++) {
+            sender.queueMessage(JsonNodeFactory.instance.numberNode(i));
+        }
+
+        assertThat(allHandled.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void typedHandlerReceivesDeserializedBytesMessage() throws Exception {
+        CountDownLatch handled = new CountDownLatch(1);
+        AtomicReference<Payload> received = new AtomicReference<>();
+        listener = new ActiveMqListener(URL, null, null, QUEUE_INPUT, QUEUE_ERROR);
+        listener.receiveMessages(new PayloadHandler(received, handled));
+
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            BytesMessage message = session.createBytesMessage();
+            message.writeBytes("{\"navn\":\"Åse\"}".getBytes(StandardCharsets.UTF_8));
+            session.createProducer(session.createQueue(QUEUE_INPUT)).send(message);
+        } finally {
+            connection.close();
+        }
+
+        assertThat(handled.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(received.get().navn).isEqualTo("Åse");
+    }
+
+    @Test
+    public void failedMessageIsRedeliveredBeforeErrorQueue() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch handled = new CountDownLatch(1);
+        ConsumerSettings settings = ConsumerSettings.defaults
+                .maxRedeliveries(2)
+                .redeliveryDelayMillis(10);
+        listener = new ActiveMqListener(URL, null, null, QUEUE_INPUT, QUEUE_ERROR, 1, 0, null, JsonConfig.standard.get(), settings);
+        listener.receiveMessages((MessageHandler) message -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("midlertidig feil");
+            }
+            handled.countDown();
+        });
+
+        sender.queueMessage(JsonNodeFactory.instance.textNode("hei"));
+
+        assertThat(handled.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void stopWaitsForMessagesBeingHandled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+        listener = new ActiveMqListener(URL, null, null, QUEUE_INPUT, QUEUE_ERROR, 1, 2, null, JsonConfig.standard.get(), ConsumerSettings.defaults);
+        listener.receiveMessages(message -> {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            finished.incrementAndGet();
+        });
+
+        sender.queueMessage(JsonNodeFactory.instance.textNode("hei"));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        listener.stop();
+        listener = null;
+
+        assertThat(finished.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void payloadTypeIsResolvedFromHandlerClass() {
+        assertThat(TypedMessageHandler.payloadType(PayloadHandler.class)).isEqualTo(Payload.class);
+        MessageHandler jsonHandler = message -> {};
+        assertThat(TypedMessageHandler.payloadType(jsonHandler.getClass())).isEqualTo(JsonNode.class);
+    }
+
+    public static class Payload {
+        public String navn;
+    }
+
+    private static class PayloadHandler implements TypedMessageHandler<Payload> {
+        private final AtomicReference<Payload> received;
+        private final CountDownLatch handled;
+
+        PayloadHandler(AtomicReference<Payload> received, CountDownLatch handled) {
+            this.received = received;
+            this.handled = handled;
+        }
+
+        @Override
+        public void handle(Payload message) {
+            received.set(message);
+            handled.countDown();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.apache.activemq.ActiveMQConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActiveMqSenderTest {
+    private static final String URL = "vm://localhost?broker.persistent=false";
+    private static final String QUEUE = "sender.test";
+
+    private final ActiveMqSender sender = new ActiveMqSender(URL, null, null, QUEUE, 2, 3, 5);
+
+    @After
+    public void stop() {
+        sender.stop();
+    }
+
+    @Test
+    public void messagesFromManyThreadsShareThePool() throws Exception {
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            MessageConsumer consumer = consumer(connection);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int i = 0; i < 20; i++) {
+                int number = i;
+                executor.execute(() -> sender.queueMessage(JsonNodeFactory.instance.numberNode(number)));
+            }
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(receiveAll(consumer)).hasSize(20);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void batchIsSentInSeveralTransactions() throws Exception {
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            MessageConsumer consumer = consumer(connection);
+            List<JsonNode> messages = IntStream.range(0, 10)
+                    .mapToObj(JsonNodeFactory.instance::numberNode)
+                    .collect(Collectors.toList());
+
+            sender.queueMessages(messages);
+
+            assertThat(receiveAll(consumer)).hasSize(10);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void asyncSendCompletesWhenAcknowledged() throws Exception {
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            MessageConsumer consumer = consumer(connection);
+            List<CompletableFuture<Void>> results = IntStream.range(0, 10)
+                    .mapToObj(i -> sender.queueMessageAsync(JsonNodeFactory.instance.numberNode(i)).toCompletableFuture())
+                    .collect(Collectors.toList());
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            assertThat(receiveAll(consumer)).hasSize(10);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static MessageConsumer consumer(ActiveMQConnection connection) throws JMSException {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        return session.createConsumer(session.createQueue(QUEUE));
+    }
+
+    private static Set<String> receiveAll(MessageConsumer consumer) throws JMSException {
+        Set<String> received = new HashSet<>();
+        TextMessage message;
+        while ((message = (TextMessage) consumer.receive(1_000)) != null) {
+            received.add(message.getText());
+        }
+        return received;
+    }
+}
@@ -0,0 +1,72 @@
+package no.obos.util.servicebuilder.mq;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ErrorQueueRequeuerTest {
+    private static final String URL = "vm://localhost?broker.persistent=false";
+    private static final String QUEUE_INPUT = "requeue.test.input";
+    private static final String QUEUE_ERROR = "requeue.test.error";
+
+    private final ErrorQueueRequeuer requeuer = new ErrorQueueRequeuer(URL, null, null, QUEUE_INPUT, QUEUE_ERROR, 2, 0);
+
+    @After
+    public void stop() {
+        requeuer.stop();
+    }
+
+    @Test
+    public void selectorLimitsWhichMessagesAreMoved() throws Exception {
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createQueue(QUEUE_ERROR));
+            for (int i = 0; i < 5; i++) {
+                TextMessage message = session.createTextMessage("melding " + i);
+                message.setStringProperty("kilde", i % 2 == 0 ? "a" : "b");
+                message.setJMSCorrelationID("id-" + i);
+                producer.send(message);
+            }
+
+            assertThat(requeuer.requeue("kilde = 'a'")).isEqualTo(3);
+
+            MessageConsumer input = session.createConsumer(session.createQueue(QUEUE_INPUT));
+            TextMessage moved = (TextMessage) input.receive(1_000);
+            assertThat(moved.getText()).isEqualTo("melding 0");
+            assertThat(moved.getJMSCorrelationID()).isEqualTo("id-0");
+
+            assertThat(requeuer.requeue(null)).isEqualTo(2);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void countsMatchingMessagesWithoutConsumingThem() throws Exception {
+        ActiveMQConnection connection = ActiveMqUtils.openConnection(null, null, URL);
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("requeue.test.count");
+            MessageProducer producer = session.createProducer(queue);
+            for (int i = 0; i < 3; i++) {
+                TextMessage message = session.createTextMessage("melding " + i);
+                message.setStringProperty("kilde", i == 0 ? "a" : "b");
+                producer.send(message);
+            }
+
+            assertThat(ErrorQueueRequeuer.countMessages(session, queue, "kilde = 'b'")).isEqualTo(2);
+            assertThat(ErrorQueueRequeuer.countMessages(session, queue, null)).isEqualTo(3);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package no.obos.util.servicebuilder.mq;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlowControlTest {
+
+    @Test
+    public void highErrorRatePausesConsumers() {
+        FlowControl flowControl = new FlowControl("flow.test.errors", ConsumerSettings.defaults.pauseErrorRate(0.5).pauseMillis(60_000));
+
+        for (int i = 0; i < FlowControl.WINDOW_SIZE; i++) {
+            flowControl.record(TimeUnit.MILLISECONDS.toNanos(1), i % 2 == 0, System.nanoTime());
+        }
+
+        assertThat(flowControl.isPaused()).isTrue();
+    }
+
+    @Test
+    public void fastHandlersAreNotPaused() {
+        FlowControl flowControl = new FlowControl("flow.test.latency", ConsumerSettings.defaults.pauseLatencyMillis(100).pauseMillis(60_000));
+
+        for (int i = 0; i < FlowControl.WINDOW_SIZE; i++) {
+            flowControl.record(TimeUnit.MILLISECONDS.toNanos(1), false, System.nanoTime());
+        }
+        assertThat(flowControl.isPaused()).isFalse();
+
+        for (int i = 0; i < FlowControl.WINDOW_SIZE; i++) {
+            flowControl.record(TimeUnit.MILLISECONDS.toNanos(500), false, System.nanoTime());
+        }
+        assertThat(flowControl.isPaused()).isTrue();
+    }
+
+    @Test
+    public void maxPerSecondSpacesMessages() throws Exception {
+        FlowControl flowControl = new FlowControl("flow.test.rate", ConsumerSettings.defaults.maxPerSecond(100));
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            flowControl.acquire();
+            flowControl.release(0, false);
+        }
+
+        assertThat(System.nanoTime() - startNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90));
+    }
+}
@@ -0,0 +1,56 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageQueueListenerTest {
+
+    public static class Melding {
+        public String tekst;
+    }
+
+    public static class MeldingHandler implements TypedMessageHandler<Melding> {
+        final List<Melding> received = new ArrayList<>();
+
+        @Override
+        public void handle(Melding message) {
+            received.add(message);
+        }
+    }
+
+    @Test
+    public void typedHandlerIsServedByJsonListener() {
+        List<MessageHandler> handlers = new ArrayList<>();
+        MessageQueueListener listener = new MessageQueueListener() {
+            @Override
+            public void receiveMessages(MessageHandler handler) {
+                handlers.add(handler);
+            }
+
+            @Override
+            public void requeueFailedMessages() {
+            }
+
+            @Override
+            public void requeueFailedMessages(String selector) {
+            }
+
+            @Override
+            public int getErrorQueueSize() {
+                return 0;
+            }
+        };
+        MeldingHandler handler = new MeldingHandler();
+
+        listener.receiveMessages(handler);
+        handlers.get(0).handle(JsonNodeFactory.instance.objectNode().put("tekst", "hei"));
+
+        assertThat(handler.received).hasSize(1);
+        assertThat(handler.received.get(0).tekst).isEqualTo("hei");
+    }
+}
@@ -0,0 +1,37 @@
+package no.obos.util.servicebuilder.mq;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueueMonitorTest {
+
+    @Test
+    public void firstSampleHasNoRates() {
+        QueueStatistics statistics = QueueMonitor.toStatistics("kø", ImmutableMap.of("size", 3L, "enqueueCount", 10L, "dequeueCount", 7L, "consumerCount", 2L), null, 1_000);
+
+        assertThat(statistics.size).isEqualTo(3);
+        assertThat(statistics.consumerCount).isEqualTo(2);
+        assertThat(statistics.enqueueRatePerSecond).isEqualTo(0);
+    }
+
+    @Test
+    public void ratesAreComputedFromPreviousSample() {
+        QueueStatistics previous = QueueMonitor.toStatistics("kø", ImmutableMap.of("enqueueCount", 10L, "dequeueCount", 7L), null, 1_000);
+
+        QueueStatistics statistics = QueueMonitor.toStatistics("kø", ImmutableMap.of("enqueueCount", 30L, "dequeueCount", "12"), previous, 3_000);
+
+        assertThat(statistics.enqueueRatePerSecond).isEqualTo(10);
+        assertThat(statistics.dequeueRatePerSecond).isEqualTo(2.5);
+        assertThat(statistics.size).isEqualTo(0);
+    }
+
+    @Test
+    public void oldSamplesAreNotCurrent() {
+        QueueStatistics statistics = QueueMonitor.toStatistics("kø", ImmutableMap.of("size", 3L), null, 1_000);
+
+        assertThat(QueueMonitor.isCurrent(statistics, 1_000, 2_000)).isTrue();
+        assertThat(QueueMonitor.isCurrent(statistics, 1_000, 60_000)).isFalse();
+    }
+}
@@ -2,7 +2,7 @@ package no.obos.util.servicebuilder;
 
 import no.obos.util.servicebuilder.addon.*;
 import no.obos.util.servicebuilder.model.ServiceDefinition;
-import no.obos.util.servicebuilder.mq.MessageHandler;
+import no.obos.util.servicebuilder.mq.TypedMessageHandler;
 
 public class Addons {
 
@@ -115,7 +115,7 @@ public class Addons {
             <artifactId>servicebuilder-activemq</artifactId>
         </dependency>
     */
-    public static ActiveMqListenerAddon activeMqListener(Class<? extends MessageHandler> handler) {
+    public static ActiveMqListenerAddon activeMqListener(Class<? extends TypedMessageHandler<?>> handler) {
         return ActiveMqListenerAddon.defaults(handler);
     }
 
@@ -11,6 +11,7 @@ import no.obos.util.servicebuilder.exception.ExternalResourceExceptionMapper;
 import no.obos.util.servicebuilder.exception.FieldLevelExceptionMapper;
 import no.obos.util.servicebuilder.exception.HttpProblemExceptionMapper;
 import no.obos.util.servicebuilder.exception.JsonProcessingExceptionMapper;
+import no.obos.util.servicebuilder.exception.ProblemDeduplicator;
 import no.obos.util.servicebuilder.exception.RuntimeExceptionMapper;
 import no.obos.util.servicebuilder.exception.UserMessageExceptionMapper;
 import no.obos.util.servicebuilder.exception.ValidationExceptionMapper;
@@ -24,6 +25,7 @@ import javax.ws.rs.NotFoundException;
  * Legger til et sett med standard exceptionmappere for Jersey som mapper til problem response.
  * Logger stacktrace for de fleste exceptions, med unntak av exceptions og underexceptions satt til false i config.stacktraceConfig.
  * Config.logAllStackTraces er ment for debug-bruk.
+ * Like problemer innenfor duplicateWindowMillis logges kun én gang, se ProblemDeduplicator. 0 logger alle.
  */
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class ExceptionMapperAddon implements Addon {
@@ -31,11 +33,17 @@ public class ExceptionMapperAddon implements Addon {
     @Wither(AccessLevel.PRIVATE)
     public final ImmutableMap<Class<?>, Boolean> stacktraceConfig;
 
+    @Wither(AccessLevel.PRIVATE)
+    public final long duplicateWindowMillis;
+
+    public static final long DEFAULT_DUPLICATE_WINDOW_MILLIS = 10_000;
+
     public static ExceptionMapperAddon defaults = new ExceptionMapperAddon(
             ImmutableMap.<Class<?>, Boolean>builder()
                     .put(Throwable.class, true)
                     .put(NotFoundException.class, false)
-                    .build()
+                    .build(),
+            DEFAULT_DUPLICATE_WINDOW_MILLIS
     );
 
 
@@ -52,8 +60,10 @@ public class ExceptionMapperAddon implements Addon {
             registrator.register(UserMessageExceptionMapper.class);
             registrator.register(HttpProblemExceptionMapper.class);
         });
+        ProblemDeduplicator deduplicator = new ProblemDeduplicator(duplicateWindowMillis);
         jerseyConfig.addBinder(binder -> {
             binder.bind(this).to(ExceptionMapperAddon.class);
+            binder.bind(deduplicator).to(ProblemDeduplicator.class);
             binder.bindAsContract(ExceptionUtil.class);
         });
     }
@@ -61,4 +71,8 @@ public class ExceptionMapperAddon implements Addon {
     public ExceptionMapperAddon stacktraceConfig(Class<?> key, boolean value) {
         return this.withStacktraceConfig(GuavaHelper.plus(stacktraceConfig, key, value));
     }
+
+    public ExceptionMapperAddon duplicateWindowMillis(long duplicateWindowMillis) {
+        return this.withDuplicateWindowMillis(duplicateWindowMillis);
+    }
 }
@@ -1,6 +1,8 @@
 package no.obos.util.servicebuilder.addon;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -10,6 +12,8 @@ import no.obos.util.servicebuilder.JerseyConfig;
 import no.obos.util.servicebuilder.JettyServer;
 import no.obos.util.servicebuilder.ServiceConfig;
 import no.obos.util.servicebuilder.client.ClientGenerator;
+import no.obos.util.servicebuilder.client.CoalescingConnectorProvider;
+import no.obos.util.servicebuilder.client.LoadBalancer;
 import no.obos.util.servicebuilder.client.StubGenerator;
 import no.obos.util.servicebuilder.client.TargetGenerator;
 import no.obos.util.servicebuilder.exception.DependenceException;
@@ -18,6 +22,7 @@ import no.obos.util.servicebuilder.model.Addon;
 import no.obos.util.servicebuilder.model.PropertyProvider;
 import no.obos.util.servicebuilder.model.ServiceDefinition;
 import no.obos.util.servicebuilder.util.ApiVersionUtil;
+import no.obos.util.servicebuilder.util.GuavaHelper;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.jersey.client.ClientConfig;
 
@@ -36,6 +41,10 @@ import java.util.function.Supplier;
 public class JerseyClientAddon implements Addon {
 
     public static final String CONFIG_KEY_URL = "service.url";
+    /**
+     * Kommaseparert liste med instanser av tjenesten. Brukes i stedet for service.url for lastbalansering i klienten.
+     */
+    public static final String CONFIG_KEY_URLS = "service.urls";
 
     public final ServiceDefinition serviceDefinition;
     @Wither(AccessLevel.PRIVATE)
@@ -57,11 +66,19 @@ public class JerseyClientAddon implements Addon {
     @Wither(AccessLevel.PRIVATE)
     public final String apiVersion;
     @Wither(AccessLevel.PRIVATE)
+    public final boolean coalesceGets;
+    @Wither(AccessLevel.PRIVATE)
+    public final ImmutableList<String> coalescingKeyHeaders;
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean logging;
+    @Wither(AccessLevel.PRIVATE)
+    public final ImmutableList<URI> endpoints;
+    @Wither(AccessLevel.PRIVATE)
     public final Runtime runtime;
 
     public static JerseyClientAddon defaults(ServiceDefinition serviceDefinition) {
         String apiVersion = ApiVersionUtil.getApiVersion(serviceDefinition.getClass());
-        return new JerseyClientAddon(serviceDefinition, null, true, "api", null, true, true, true, null, apiVersion, null);
+        return new JerseyClientAddon(serviceDefinition, null, true, "api", null, true, true, true, null, apiVersion, false, CoalescingConnectorProvider.DEFAULT_KEY_HEADERS, true, ImmutableList.of(), null);
     }
 
 
@@ -70,16 +87,35 @@ public class JerseyClientAddon implements Addon {
     public Addon withProperties(PropertyProvider properties) {
         String name = serviceDefinition.getName();
         String prefix = name + ".";
+        if (properties.has(prefix + CONFIG_KEY_URLS)) {
+            ImmutableList<URI> endpoints = Splitter.on(',')
+                    .trimResults()
+                    .omitEmptyStrings()
+                    .splitToList(properties.get(prefix + CONFIG_KEY_URLS))
+                    .stream()
+                    .map(url -> withApiVersion(URI.create(url)))
+                    .collect(GuavaHelper.listCollector());
+            if (endpoints.isEmpty()) {
+                throw new IllegalStateException("Property " + prefix + CONFIG_KEY_URLS + " must contain at least one url, was: '"
+                        + properties.get(prefix + CONFIG_KEY_URLS) + "'");
+            }
+            return this
+                    .uri(endpoints.get(0))
+                    .withEndpoints(endpoints);
+        }
         properties.failIfNotPresent(prefix + CONFIG_KEY_URL);
 
-        URI uri = URI.create(properties.get(prefix + CONFIG_KEY_URL));
-        if (addApiVersionToPath) {
-            uri = UriBuilder.fromUri(uri).path("s" + apiVersion).build();
-        }
+        URI uri = withApiVersion(URI.create(properties.get(prefix + CONFIG_KEY_URL)));
         return this
                 .uri(uri);
     }
 
+    private URI withApiVersion(URI uri) {
+        return addApiVersionToPath
+                ? UriBuilder.fromUri(uri).path("s" + apiVersion).build()
+                : uri;
+    }
+
     @Override
     public Addon initialize(ServiceConfig serviceConfig) {
         Supplier<String> appTokenIdSupplier = null;
@@ -99,18 +135,28 @@ public class JerseyClientAddon implements Addon {
         String clientAppName = serviceConfig.serviceDefinition.getName()
                 + ":"
                 + ApiVersionUtil.getApiVersion(serviceConfig.serviceDefinition.getClass());
+        LoadBalancer loadBalancer = null;
+        if (endpoints.size() > 1) {
+            loadBalancer = new LoadBalancer(endpoints)
+                    .startProbing(LoadBalancer.DEFAULT_PROBE_INTERVAL_MILLIS);
+        }
         Client client = ClientGenerator.defaults(serviceDefinition)
                 .clientConfigBase(clientConfigBase)
                 .clientAppName(clientAppName)
                 .appTokenSupplier(appTokenIdSupplier)
+                .coalesceGets(coalesceGets)
+                .coalescingKeyHeaders(coalescingKeyHeaders)
+                .loadBalancer(loadBalancer)
                 .generate();
         StubGenerator stubGenerator = StubGenerator.defaults(client, uri)
-                .apiPath(apiPrefix);
+                .apiPath(apiPrefix)
+                .logging(logging);
 
         TargetGenerator targetGenerator = TargetGenerator.defaults(client, uri)
-                .throwExceptionForErrors(true);
+                .throwExceptionForErrors(true)
+                .logging(logging);
 
-        return withAppTokenIdSupplier(appTokenIdSupplier).withRuntime(new Runtime(client, stubGenerator, targetGenerator));
+        return withAppTokenIdSupplier(appTokenIdSupplier).withRuntime(new Runtime(client, stubGenerator, targetGenerator, loadBalancer));
     }
 
 
@@ -143,7 +189,20 @@ public class JerseyClientAddon implements Addon {
     @Override
     public void addToJettyServer(JettyServer jettyServer) {
         if (monitorIntegration) {
-            ObosHealthCheckRegistry.registerPingCheck(serviceDefinition.getName() + ": " + uri.toString(), uri.toString());
+            if (endpoints.size() > 1) {
+                endpoints.forEach(endpoint ->
+                        ObosHealthCheckRegistry.registerPingCheck(serviceDefinition.getName() + ": " + endpoint.toString(), endpoint.toString())
+                );
+            } else {
+                ObosHealthCheckRegistry.registerPingCheck(serviceDefinition.getName() + ": " + uri.toString(), uri.toString());
+            }
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        if (runtime != null && runtime.loadBalancer != null) {
+            runtime.loadBalancer.stop();
         }
     }
 
@@ -188,6 +247,7 @@ public class JerseyClientAddon implements Addon {
         public final Client client;
         public final StubGenerator stubGenerator;
         public final TargetGenerator targetGenerator;
+        public final LoadBalancer loadBalancer;
     }
 
 
@@ -215,7 +275,39 @@ public class JerseyClientAddon implements Addon {
         return withTargetThrowsExceptions(targetThrowsExceptions);
     }
 
+    /**
+     * Instanser av tjenesten som kallene fordeles på. Overstyrer uri.
+     */
+    public JerseyClientAddon endpoints(URI... endpoints) {
+        if (endpoints.length == 0) {
+            throw new IllegalArgumentException("endpoints needs at least one uri");
+        }
+        return withEndpoints(ImmutableList.copyOf(endpoints))
+                .withUri(endpoints[0]);
+    }
+
     public JerseyClientAddon addApiVersionToPath(boolean addApiVersionToPath) {
         return withAddApiVersionToPath(addApiVersionToPath);
     }
+
+    /**
+     * Samtidige, identiske GET-kall mot tjenesten deler ett utgående kall.
+     */
+    public JerseyClientAddon coalesceGets(boolean coalesceGets) {
+        return withCoalesceGets(coalesceGets);
+    }
+
+    /**
+     * Headere som i tillegg til URI avgjør om to GET-kall er identiske.
+     */
+    public JerseyClientAddon coalescingKeyHeaders(String... coalescingKeyHeaders) {
+        return withCoalescingKeyHeaders(ImmutableList.copyOf(coalescingKeyHeaders));
+    }
+
+    /**
+     * Logging av hvert kall på INFO. Responstider registreres uansett i metrics.
+     */
+    public JerseyClientAddon logging(boolean logging) {
+        return withLogging(logging);
+    }
 }
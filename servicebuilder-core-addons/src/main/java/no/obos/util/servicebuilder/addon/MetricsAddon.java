@@ -2,6 +2,7 @@ package no.obos.util.servicebuilder.addon;
 
 import no.obos.metrics.ObosMetricsServlet;
 import no.obos.util.servicebuilder.JettyServer;
+import no.obos.util.servicebuilder.metrics.MetricsServlet;
 import no.obos.util.servicebuilder.model.Addon;
 import org.eclipse.jetty.servlet.ServletHolder;
 
@@ -9,10 +10,12 @@ import org.eclipse.jetty.servlet.ServletHolder;
  * Legger til servlet for metrics. Metrics-sjekker for forskjellig funksjonalitet (database, eksterne tjenester osv)
  * registreres i deres respektive addons.
  * Standard path er tjeneste/versjon/metrics/
+ * Målinger fra servicebuilder sine egne komponenter (klientkall, køer osv) ligger under tjeneste/versjon/metrics/servicebuilder
  */
 public class MetricsAddon implements Addon {
 
     private static final String PATH_SPEC = "/metrics/*";
+    public static final String SERVICEBUILDER_PATH_SPEC = "/metrics/servicebuilder/*";
 
     public static MetricsAddon defaults = new MetricsAddon();
 
@@ -20,5 +23,6 @@ public class MetricsAddon implements Addon {
     public void addToJettyServer(JettyServer jettyServer) {
         ServletHolder metricsServletHolder = new ServletHolder(new ObosMetricsServlet(jettyServer.getClass()));
         jettyServer.getServletContext().addServlet(metricsServletHolder, PATH_SPEC);
+        jettyServer.getServletContext().addServlet(new ServletHolder(new MetricsServlet()), SERVICEBUILDER_PATH_SPEC);
     }
 }
@@ -5,6 +5,11 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.experimental.Wither;
 import no.obos.util.servicebuilder.JerseyConfig;
+import no.obos.util.servicebuilder.ServiceConfig;
+import no.obos.util.servicebuilder.log.AccessLog;
+import no.obos.util.servicebuilder.log.AccessLogFormat;
+import no.obos.util.servicebuilder.log.FastTrackMatcher;
+import no.obos.util.servicebuilder.log.ServerLogEntityInterceptor;
 import no.obos.util.servicebuilder.log.ServerLogFilter;
 import no.obos.util.servicebuilder.log.ServerLogger;
 import no.obos.util.servicebuilder.log.model.LogParams;
@@ -16,34 +21,103 @@ import java.util.function.Predicate;
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class ServerLogAddon implements Addon {
 
-    public final ImmutableList<Predicate<ContainerRequestContext>> fastTrackFilters =
-            ImmutableList.of(
-                    request -> "OPTIONS".equals(request.getMethod()),
-                    request -> request.getUriInfo() != null
-                            && request.getUriInfo().getAbsolutePath().toString().contains("swagger.json"),
-                    request -> request.getUriInfo() != null
-                            && request.getUriInfo().getAbsolutePath().toString().contains("metrics")
-            );
-
     @Wither(AccessLevel.PRIVATE)
     public final LogParams logParams;
 
-    public static final ServerLogAddon defaults = new ServerLogAddon(LogParams.defaults);
+    /**
+     * Logger fra en egen tråd via en ringbuffer, i stedet for på kallende tråd.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean asyncLogging;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final AccessLogFormat accessLogFormat;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final int accessLogBufferSize;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final AccessLog.OverflowPolicy overflowPolicy;
+
+    /**
+     * Kall som ikke logges. Standard er OPTIONS, swagger.json og metrics.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final FastTrackMatcher fastTrack;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final Runtime runtime;
 
+    public static final ServerLogAddon defaults = new ServerLogAddon(LogParams.defaults, true, AccessLogFormat.TEXT,
+            AccessLog.DEFAULT_CAPACITY, AccessLog.OverflowPolicy.BLOCK, FastTrackMatcher.defaults, null);
 
+    @Override
+    public Addon initialize(ServiceConfig serviceConfig) {
+        AccessLog accessLog = null;
+        if (asyncLogging) {
+            accessLog = new AccessLog(accessLogBufferSize, overflowPolicy, accessLogFormat);
+            accessLog.start();
+        }
+        return withRuntime(new Runtime(accessLog));
+    }
 
     public void addToJerseyConfig(JerseyConfig serviceConfig) {
-        ServerLogger serverLogger = new ServerLogger(fastTrackFilters, logParams);
+        ServerLogger serverLogger = new ServerLogger(fastTrack, logParams, runtime.accessLog, accessLogFormat);
         serviceConfig.addBinder(binder -> {
             binder.bind(serverLogger).to(ServerLogger.class);
         });
         serviceConfig.addRegistations(registrator ->
                 registrator
                         .register(ServerLogFilter.class)
+                        .register(ServerLogEntityInterceptor.class)
         );
     }
 
+    @Override
+    public void cleanUp() {
+        if (runtime != null && runtime.accessLog != null) {
+            runtime.accessLog.stop();
+        }
+    }
+
     public ServerLogAddon logParams(LogParams logParams) {
         return withLogParams(logParams);
     }
+
+    public ServerLogAddon fastTrackPath(String pathFragment) {
+        return withFastTrack(fastTrack.plusPathFragment(pathFragment));
+    }
+
+    public ServerLogAddon fastTrackFilter(Predicate<ContainerRequestContext> filter) {
+        return withFastTrack(fastTrack.plusFilter(filter));
+    }
+
+    /**
+     * @deprecated Bruk fastTrack. Reglene returneres som ett filter.
+     */
+    @Deprecated
+    public ImmutableList<Predicate<ContainerRequestContext>> fastTrackFilters() {
+        return ImmutableList.of(fastTrack);
+    }
+
+    public ServerLogAddon asyncLogging(boolean asyncLogging) {
+        return withAsyncLogging(asyncLogging);
+    }
+
+    public ServerLogAddon accessLogFormat(AccessLogFormat accessLogFormat) {
+        return withAccessLogFormat(accessLogFormat);
+    }
+
+    public ServerLogAddon accessLogBufferSize(int accessLogBufferSize) {
+        return withAccessLogBufferSize(accessLogBufferSize);
+    }
+
+    public ServerLogAddon overflowPolicy(AccessLog.OverflowPolicy overflowPolicy) {
+        return withOverflowPolicy(overflowPolicy);
+    }
+
+    @AllArgsConstructor
+    public static class Runtime {
+        public final AccessLog accessLog;
+    }
 }
@@ -0,0 +1,124 @@
+package no.obos.util.servicebuilder.addon;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.Wither;
+import no.obos.util.servicebuilder.JerseyConfig;
+import no.obos.util.servicebuilder.JettyServer;
+import no.obos.util.servicebuilder.ServiceConfig;
+import no.obos.util.servicebuilder.model.Addon;
+import no.obos.util.servicebuilder.model.PropertyProvider;
+import no.obos.util.servicebuilder.slowrequest.SlowRequestFilter;
+import no.obos.util.servicebuilder.slowrequest.SlowRequestServlet;
+import no.obos.util.servicebuilder.slowrequest.SlowRequestTracker;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+/**
+ * Følger med på kall under behandling og logger stacktrace for kall som henger. Med servletEnabled listes kall som har
+ * gått forbi terskelen på tjeneste/versjon/admin/slowrequests/ (alle kall under behandling med ?all=true). Listen viser
+ * uri og stacktrace uten tilgangskontroll, og er derfor av som standard.
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class SlowRequestAddon implements Addon {
+    public static final String CONFIG_KEY_THRESHOLD_MILLIS = "slowrequest.threshold.millis";
+    public static final String CONFIG_KEY_ADAPTIVE = "slowrequest.adaptive";
+    public static final String CONFIG_KEY_SAMPLE_INTERVAL_MILLIS = "slowrequest.sample.interval.millis";
+    public static final String CONFIG_KEY_SERVLET_ENABLED = "slowrequest.servlet.enabled";
+    public static final String PATH_SPEC = "/admin/slowrequests/*";
+
+    /**
+     * Fast terskel, og terskel for endepunkter uten nok historikk når adaptive er på.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final long thresholdMillis;
+
+    /**
+     * Terskel per endepunkt utledet fra p99 i forrige tidsvindu.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean adaptive;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final long sampleIntervalMillis;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxSamplesPerRequest;
+
+    /**
+     * Om PATH_SPEC skal eksponeres. Bør bare slås på når admin-stier er sperret utenfra.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean servletEnabled;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final Runtime runtime;
+
+    public static final SlowRequestAddon defaults = new SlowRequestAddon(SlowRequestTracker.DEFAULT_THRESHOLD_MILLIS, false,
+            SlowRequestTracker.DEFAULT_SAMPLE_INTERVAL_MILLIS, SlowRequestTracker.DEFAULT_MAX_SAMPLES, false, null);
+
+    @Override
+    public Addon withProperties(PropertyProvider properties) {
+        return this
+                .thresholdMillis(Long.parseLong(properties.get(CONFIG_KEY_THRESHOLD_MILLIS, String.valueOf(thresholdMillis))))
+                .adaptive(Boolean.parseBoolean(properties.get(CONFIG_KEY_ADAPTIVE, String.valueOf(adaptive))))
+                .sampleIntervalMillis(Long.parseLong(properties.get(CONFIG_KEY_SAMPLE_INTERVAL_MILLIS, String.valueOf(sampleIntervalMillis))))
+                .servletEnabled(Boolean.parseBoolean(properties.get(CONFIG_KEY_SERVLET_ENABLED, String.valueOf(servletEnabled))));
+    }
+
+    @Override
+    public Addon initialize(ServiceConfig serviceConfig) {
+        SlowRequestTracker tracker = new SlowRequestTracker(thresholdMillis, adaptive, sampleIntervalMillis, maxSamplesPerRequest);
+        tracker.start();
+        return withRuntime(new Runtime(tracker));
+    }
+
+    @Override
+    public void addToJerseyConfig(JerseyConfig jerseyConfig) {
+        jerseyConfig.addBinder(binder ->
+                binder.bind(runtime.tracker).to(SlowRequestTracker.class)
+        );
+        jerseyConfig.addRegistations(registrator -> registrator
+                .register(SlowRequestFilter.class)
+        );
+    }
+
+    @Override
+    public void addToJettyServer(JettyServer jettyServer) {
+        if (! servletEnabled) {
+            return;
+        }
+        jettyServer.getServletContext().addServlet(new ServletHolder(new SlowRequestServlet(runtime.tracker)), PATH_SPEC);
+    }
+
+    @Override
+    public void cleanUp() {
+        if (runtime != null) {
+            runtime.tracker.stop();
+        }
+    }
+
+    public SlowRequestAddon thresholdMillis(long thresholdMillis) {
+        return withThresholdMillis(thresholdMillis);
+    }
+
+    public SlowRequestAddon adaptive(boolean adaptive) {
+        return withAdaptive(adaptive);
+    }
+
+    public SlowRequestAddon sampleIntervalMillis(long sampleIntervalMillis) {
+        return withSampleIntervalMillis(sampleIntervalMillis);
+    }
+
+    public SlowRequestAddon maxSamplesPerRequest(int maxSamplesPerRequest) {
+        return withMaxSamplesPerRequest(maxSamplesPerRequest);
+    }
+
+    public SlowRequestAddon servletEnabled(boolean servletEnabled) {
+        return withServletEnabled(servletEnabled);
+    }
+
+    @AllArgsConstructor
+    public static class Runtime {
+        public final SlowRequestTracker tracker;
+    }
+}
@@ -2,6 +2,9 @@ package no.obos.util.servicebuilder.exception;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import lombok.extern.slf4j.Slf4j;
 import no.obos.util.servicebuilder.addon.ExceptionMapperAddon;
@@ -9,6 +12,7 @@ import no.obos.util.servicebuilder.model.ExceptionDescription;
 import no.obos.util.servicebuilder.model.LogLevel;
 import no.obos.util.servicebuilder.model.ProblemResponse;
 import no.obos.util.servicebuilder.util.LogUtil;
+import org.jvnet.hk2.annotations.Optional;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -19,8 +23,8 @@ import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class ExceptionUtil {
@@ -31,7 +35,14 @@ public class ExceptionUtil {
     final HttpHeaders headers;
     final ExceptionMapperAddon config;
     final HttpServletRequest request;
+    final ProblemDeduplicator deduplicator;
 
+    /**
+     * Beslutning om stacktrace per exception-klasse, per stacktraceConfig.
+     */
+    private static final LoadingCache<Map<Class<?>, Boolean>, Map<Class<?>, Boolean>> stacktraceDecisions = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(config -> new ConcurrentHashMap<>()));
 
     private final static ImmutableMap<MediaType, String> mediaTypeMap = ImmutableMap.<MediaType, String>builder()
             .put(MediaType.APPLICATION_JSON_TYPE, ExceptionUtil.APPLICATION_PROBLEM_JSON)
@@ -39,10 +50,15 @@ public class ExceptionUtil {
             .build();
 
     @Inject
-    public ExceptionUtil(@Context HttpHeaders headers, ExceptionMapperAddon config, @Context HttpServletRequest request) {
+    public ExceptionUtil(@Context HttpHeaders headers, ExceptionMapperAddon config, @Context HttpServletRequest request, @Optional ProblemDeduplicator deduplicator) {
         this.headers = headers;
         this.config = config;
         this.request = request;
+        this.deduplicator = deduplicator;
+    }
+
+    public ExceptionUtil(HttpHeaders headers, ExceptionMapperAddon config, HttpServletRequest request) {
+        this(headers, config, request, null);
     }
 
 
@@ -118,23 +134,33 @@ public class ExceptionUtil {
     }
 
     public void logProblem(ExceptionDescription problem) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Caught exception of type: %s\n", problem.exception.getClass().getName()));
-        sb.append(String.format("Exception message: %s\n", problem.exception.getLocalizedMessage()));
+        long suppressedSinceLast = deduplicator != null ? deduplicator.register(problem.exception, problem.status) : 0;
+        if (suppressedSinceLast == ProblemDeduplicator.NOT_LOGGED) {
+            // Kort innslag uten stacktrace og headers, slik at feilreferansen brukeren får likevel kan finnes i loggen
+            LogUtil.doLog("Feilreferanse: " + problem.reference + ", status: " + problem.status
+                    + ", type: " + problem.exception.getClass().getName() + " (duplicate, details logged earlier)", problem.logLevel, problem.logger);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("Caught exception of type: ").append(problem.exception.getClass().getName()).append('\n');
+        sb.append("Exception message: ").append(problem.exception.getLocalizedMessage()).append('\n');
         if (problem.status != null && ! Strings.isNullOrEmpty(problem.title)) {
-            sb.append(String.format("Problem type: %d - %s\n", problem.status, problem.title));
+            sb.append("Problem type: ").append(problem.status).append(" - ").append(problem.title).append('\n');
         }
         if (! Strings.isNullOrEmpty(problem.detail)) {
-            sb.append(String.format("Detail message: %s\n", problem.detail));
+            sb.append("Detail message: ").append(problem.detail).append('\n');
         }
         if (! Strings.isNullOrEmpty(problem.reference)) {
-            sb.append(String.format("Feilreferanse: %s\n", problem.reference));
+            sb.append("Feilreferanse: ").append(problem.reference).append('\n');
         }
         if (! Strings.isNullOrEmpty(problem.internalMessage)) {
-            sb.append(String.format("Additional info: %s\n", problem.internalMessage));
+            sb.append("Additional info: ").append(problem.internalMessage).append('\n');
+        }
+        if (suppressedSinceLast > 0) {
+            sb.append("Identical problems not logged since last time: ").append(suppressedSinceLast).append('\n');
         }
         sb.append("Incoming server headers:\n");
-        sb.append(getContextDescription());
+        appendContextDescription(sb);
         if (problem.logStackTrace) {
             LogUtil.doLog(sb.toString(), problem.exception, problem.logLevel, problem.logger);
         } else {
@@ -144,17 +170,24 @@ public class ExceptionUtil {
 
     public String getContextDescription() {
         StringBuilder sb = new StringBuilder();
+        appendContextDescription(sb);
+        return sb.toString();
+    }
+
+    private void appendContextDescription(StringBuilder sb) {
         if (request != null) {
             if (! Strings.isNullOrEmpty(request.getRequestURI())) {
-                String method = Strings.nullToEmpty(request.getMethod());
-                String query = (Strings.isNullOrEmpty(request.getQueryString())) ? "" : "?" + request.getQueryString();
-                sb.append(String.format("  uri: %s %s%s\n", method, request.getRequestURI(), query));
+                sb.append("  uri: ").append(Strings.nullToEmpty(request.getMethod())).append(' ').append(request.getRequestURI());
+                if (! Strings.isNullOrEmpty(request.getQueryString())) {
+                    sb.append('?').append(request.getQueryString());
+                }
+                sb.append('\n');
             }
             if (request.getUserPrincipal() != null) {
-                sb.append(String.format("  userPrincipal: %s\n", request.getUserPrincipal().toString()));
+                sb.append("  userPrincipal: ").append(request.getUserPrincipal()).append('\n');
             }
             if (request.getRemoteAddr() != null) {
-                sb.append(String.format("  remoteAddr: %s\n", request.getRemoteAddr()));
+                sb.append("  remoteAddr: ").append(request.getRemoteAddr()).append('\n');
             }
         } else {
             log.warn("Request context null in exceptionUtil");
@@ -162,14 +195,12 @@ public class ExceptionUtil {
 
         if (headers != null) {
             Joiner joiner = Joiner.on(", ").skipNulls();
-            headers.getRequestHeaders().entrySet().forEach(entry -> {
-                String headerName = entry.getKey();
-                String headerValue = joiner.join(entry.getValue());
-                sb.append(String.format("  Header: %s = %s\n", headerName, headerValue));
-            });
+            for (Map.Entry<String, List<String>> entry : headers.getRequestHeaders().entrySet()) {
+                sb.append("  Header: ").append(entry.getKey()).append(" = ");
+                joiner.appendTo(sb, entry.getValue());
+                sb.append('\n');
+            }
         }
-        return sb.toString();
-
     }
 
 
@@ -184,8 +215,11 @@ public class ExceptionUtil {
             return APPLICATION_PROBLEM_JSON;
         }
         List<MediaType> acceptableMediaTypes = headers.getAcceptableMediaTypes();
-        Optional<String> firstAcceptableMediaType = acceptableMediaTypes.stream().map(mediaTypeMap::get).filter(Objects::nonNull).findFirst();
-        return firstAcceptableMediaType.orElse(APPLICATION_PROBLEM_JSON);
+        return acceptableMediaTypes.stream()
+                .map(mediaTypeMap::get)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(APPLICATION_PROBLEM_JSON);
     }
 
 
@@ -194,7 +228,16 @@ public class ExceptionUtil {
     }
 
     public static boolean shouldPrintStacktrace(Throwable throwable, Map<Class<?>, Boolean> config) {
-        Class<?> clazz = throwable.getClass();
+        Map<Class<?>, Boolean> decisions = stacktraceDecisions.getUnchecked(config);
+        Boolean decision = decisions.get(throwable.getClass());
+        if (decision == null) {
+            decision = decisions.computeIfAbsent(throwable.getClass(), clazz -> shouldPrintStacktrace(clazz, config));
+        }
+        return decision;
+    }
+
+    private static boolean shouldPrintStacktrace(Class<?> exceptionClass, Map<Class<?>, Boolean> config) {
+        Class<?> clazz = exceptionClass;
         while (clazz.getSuperclass() != null && ! Throwable.class.equals(clazz.getSuperclass())) {
             if (config.containsKey(clazz)) {
                 return config.get(clazz) == Boolean.TRUE;
@@ -0,0 +1,82 @@
+package no.obos.util.servicebuilder.exception;
+
+import lombok.EqualsAndHashCode;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Slår sammen like problemer (samme exception-type, samme opphavslinje og samme status) innenfor et tidsvindu, slik
+ * at en feilende avhengighet ikke gir tusenvis av like stacktraces i sekundet. Første problem i hvert vindu logges
+ * fullt ut, resten logges bare med feilreferanse, status og type, og telles og rapporteres sammen med det neste som
+ * logges fullt ut. Undertrykte problemer telles i exception.suppressed.
+ */
+public class ProblemDeduplicator {
+    static final int MAX_TRACKED_PROBLEMS = 1_000;
+    public static final long NOT_LOGGED = - 1;
+
+    private final long windowMillis;
+    private final Map<ProblemKey, Window> windows = new ConcurrentHashMap<>();
+    private final Counter suppressed = MetricsRegistry.counter("exception.suppressed");
+
+    public ProblemDeduplicator(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @return NOT_LOGGED dersom problemet ikke skal logges fullt ut, ellers antall like problemer som er undertrykt siden sist
+     */
+    public long register(Throwable exception, Integer status) {
+        return register(exception, status, System.currentTimeMillis());
+    }
+
+    long register(Throwable exception, Integer status, long nowMillis) {
+        if (windowMillis <= 0) {
+            return 0;
+        }
+        StackTraceElement[] stack = exception.getStackTrace();
+        ProblemKey key = new ProblemKey(exception.getClass(), stack.length > 0 ? stack[0] : null, status);
+        Window window = windows.get(key);
+        if (window == null) {
+            if (windows.size() >= MAX_TRACKED_PROBLEMS) {
+                windows.clear();
+            }
+            window = windows.putIfAbsent(key, new Window(nowMillis));
+            if (window == null) {
+                return 0;
+            }
+        }
+        long start = window.startMillis.get();
+        if (nowMillis - start >= windowMillis && window.startMillis.compareAndSet(start, nowMillis)) {
+            return window.suppressed.getAndSet(0);
+        }
+        window.suppressed.incrementAndGet();
+        suppressed.inc();
+        return NOT_LOGGED;
+    }
+
+    @EqualsAndHashCode
+    private static class ProblemKey {
+        final Class<?> type;
+        final StackTraceElement origin;
+        final Integer status;
+
+        ProblemKey(Class<?> type, StackTraceElement origin, Integer status) {
+            this.type = type;
+            this.origin = origin;
+            this.status = status;
+        }
+    }
+
+    private static class Window {
+        final AtomicLong startMillis;
+        final AtomicLong suppressed = new AtomicLong();
+
+        Window(long startMillis) {
+            this.startMillis = new AtomicLong(startMillis);
+        }
+    }
+}
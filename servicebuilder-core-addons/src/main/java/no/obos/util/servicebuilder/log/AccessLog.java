@@ -0,0 +1,225 @@
+package no.obos.util.servicebuilder.log;
+
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.log.model.LogParams;
+import no.obos.util.servicebuilder.log.model.LogRequest;
+import no.obos.util.servicebuilder.log.model.LogResponse;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.util.LogUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Asynkron tilgangslogg. Filtrene skriver innslag i en begrenset ringbuffer uten låser, og en egen tråd formaterer
+ * og logger dem.
+ * <p>
+ * Når bufferet er fullt enten forkastes innslaget (DROP) eller filtertråden venter på ledig plass (BLOCK).
+ * Forkastede innslag telles i serverlog.dropped, ventinger i serverlog.blocked.
+ */
+@Slf4j
+public class AccessLog {
+    public static final int DEFAULT_CAPACITY = 8192;
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    static final long STOP_TIMEOUT_MILLIS = 5_000;
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private final AccessLogRecord[] slots;
+    /**
+     * Sekvensnummer per plass: lik posisjon når plassen er ledig, posisjon + 1 når innslaget er klart til logging.
+     */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final OverflowPolicy overflowPolicy;
+    private final AccessLogFormat format;
+    private final StringBuilder line = new StringBuilder(512);
+    private long head;
+    private volatile boolean running;
+    private Thread writer;
+
+    /**
+     * Samme logger som synkron logging, slik at eksisterende loggoppsett gjelder uendret.
+     */
+    private static final Logger accessLogger = LoggerFactory.getLogger(ServerLogger.class);
+
+    private final Counter dropped = MetricsRegistry.counter("serverlog.dropped");
+    private final Counter blocked = MetricsRegistry.counter("serverlog.blocked");
+    private final Supplier<Number> bufferedGauge = () -> tail.get() - head;
+
+    public AccessLog(int capacity, OverflowPolicy overflowPolicy, AccessLogFormat format) {
+        int size = Math.max(2, Integer.highestOneBit((capacity - 1) << 1));
+        this.slots = new AccessLogRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new AccessLogRecord();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.format = format;
+    }
+
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        MetricsRegistry.registerGauge("serverlog.buffered", bufferedGauge);
+        writer = new Thread(this::run, "serverlog-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stopper loggtråden etter at innslag som allerede er i bufferet er skrevet.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        MetricsRegistry.removeGauge("serverlog.buffered", bufferedGauge);
+    }
+
+    public boolean publishRequest(LogRequest logRequest, LogParams logParams) {
+        long position = claim();
+        if (position < 0) {
+            return false;
+        }
+        int index = (int) (position & mask);
+        fillRequest(slots[index], logRequest, logParams);
+        slots[index].requestId = MDC.get(ServerRequestIdFilter.X_OBOS_REQUEST_ID);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    public boolean publishResponse(LogResponse logResponse, LogParams logParams) {
+        long position = claim();
+        if (position < 0) {
+            return false;
+        }
+        int index = (int) (position & mask);
+        fillResponse(slots[index], logResponse, logParams);
+        slots[index].requestId = MDC.get(ServerRequestIdFilter.X_OBOS_REQUEST_ID);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    static void fillRequest(AccessLogRecord record, LogRequest logRequest, LogParams logParams) {
+        record.request = true;
+        record.logLevel = logParams.logLevel;
+        record.uri = logRequest.uri;
+        record.clientApplication = logRequest.clientApplication;
+        record.user = logRequest.user;
+        record.headers = logParams.logHeaders ? logRequest.headers : null;
+        record.skipHeaders = logParams.skipHeaders;
+        record.entity = logParams.logResponseEntity && logRequest.entity != null && ! logRequest.entity.isEmpty()
+                ? logRequest.entity
+                : null;
+    }
+
+    static void fillResponse(AccessLogRecord record, LogResponse logResponse, LogParams logParams) {
+        record.request = false;
+        record.logLevel = logParams.logLevel;
+        record.uri = logResponse.uri;
+        record.status = logResponse.status != null ? logResponse.status : 0;
+        record.totalMillis = logResponse.totalMillis != null ? logResponse.totalMillis : - 1;
+        record.headers = logParams.logHeaders ? logResponse.headers : null;
+        record.skipHeaders = logParams.skipHeaders;
+        // Entiteten kan endres etter at kallet er ferdig, så den gjøres om til tekst på kallende tråd
+        record.entity = logParams.logResponseEntity && logResponse.entity != null
+                ? logResponse.entity.toString()
+                : null;
+    }
+
+    /**
+     * Formaterer et innslag synkront, for bruk uten asynkron logging.
+     */
+    static String format(AccessLogRecord record, AccessLogFormat format) {
+        StringBuilder out = new StringBuilder(256);
+        format.format(record, out);
+        return out.toString();
+    }
+
+    int drain() {
+        int count = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return count;
+            }
+            AccessLogRecord record = slots[index];
+            try {
+                line.setLength(0);
+                format.format(record, line);
+                // Request-id ligger i MDC på filtertråden, og må settes på nytt her for at loggmønsteret skal få den
+                if (record.requestId != null) {
+                    MDC.put(ServerRequestIdFilter.X_OBOS_REQUEST_ID, record.requestId);
+                }
+                LogUtil.doLog(line.toString(), record.logLevel, accessLogger);
+            } catch (Throwable e) {
+                log.warn("Could not write access log entry", e);
+            } finally {
+                MDC.remove(ServerRequestIdFilter.X_OBOS_REQUEST_ID);
+                record.clear();
+                sequences.set(index, head + slots.length);
+                head++;
+                count++;
+            }
+        }
+    }
+
+    private long claim() {
+        boolean waited = false;
+        while (true) {
+            long position = tail.get();
+            long sequence = sequences.get((int) (position & mask));
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (sequence < position) {
+                if (overflowPolicy == OverflowPolicy.DROP || ! running) {
+                    dropped.inc();
+                    return - 1;
+                }
+                if (! waited) {
+                    blocked.inc();
+                    waited = true;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            drain();
+        } finally {
+            // Dør tråden uventet må BLOCK-kallere slippe løs, ellers venter de på plass som aldri blir ledig
+            running = false;
+        }
+    }
+}
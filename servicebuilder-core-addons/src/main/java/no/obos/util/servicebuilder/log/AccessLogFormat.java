@@ -0,0 +1,188 @@
+package no.obos.util.servicebuilder.log;
+
+import java.util.Map;
+
+/**
+ * Format for tilgangslogg.
+ * TEXT er det tradisjonelle formatet ("GET /path, Status: 200, Millis: 3"), KEY_VALUE og JSON er strukturerte.
+ */
+public enum AccessLogFormat {
+    TEXT {
+        @Override
+        void format(AccessLogRecord record, StringBuilder out) {
+            out.append(record.uri);
+            if (record.request) {
+                appendText(out, "Client", record.clientApplication);
+                appendText(out, "User", record.user);
+            } else {
+                out.append(", Status: ").append(record.status);
+                if (record.totalMillis >= 0) {
+                    out.append(", Millis: ").append(record.totalMillis);
+                }
+            }
+            if (record.headers != null) {
+                out.append(", Headers: [");
+                boolean first = true;
+                for (Map.Entry<String, String> header : record.headers.entrySet()) {
+                    if (record.skipHeaders.contains(header.getKey())) {
+                        continue;
+                    }
+                    if (! first) {
+                        out.append(", ");
+                    }
+                    out.append(header.getKey()).append(": ").append(header.getValue());
+                    first = false;
+                }
+                out.append(']');
+            }
+            if (record.entity != null) {
+                out.append(", Entity: ");
+                if (record.request) {
+                    appendCompacted(out, record.entity);
+                } else {
+                    out.append(record.entity);
+                }
+            }
+        }
+    },
+    KEY_VALUE {
+        @Override
+        void format(AccessLogRecord record, StringBuilder out) {
+            out.append("type=").append(record.request ? "request" : "response");
+            appendKeyValue(out, "uri", record.uri);
+            if (record.request) {
+                appendKeyValue(out, "client", record.clientApplication);
+                appendKeyValue(out, "user", record.user);
+            } else {
+                out.append(" status=").append(record.status);
+                if (record.totalMillis >= 0) {
+                    out.append(" millis=").append(record.totalMillis);
+                }
+            }
+            if (record.headers != null) {
+                for (Map.Entry<String, String> header : record.headers.entrySet()) {
+                    if (! record.skipHeaders.contains(header.getKey())) {
+                        appendKeyValue(out, "header." + header.getKey(), header.getValue());
+                    }
+                }
+            }
+            appendKeyValue(out, "entity", record.entity);
+        }
+    },
+    JSON {
+        @Override
+        void format(AccessLogRecord record, StringBuilder out) {
+            out.append("{\"type\":\"").append(record.request ? "request" : "response").append('"');
+            appendJson(out, "uri", record.uri);
+            if (record.request) {
+                appendJson(out, "client", record.clientApplication);
+                appendJson(out, "user", record.user);
+            } else {
+                out.append(",\"status\":").append(record.status);
+                if (record.totalMillis >= 0) {
+                    out.append(",\"millis\":").append(record.totalMillis);
+                }
+            }
+            if (record.headers != null) {
+                out.append(",\"headers\":{");
+                boolean first = true;
+                for (Map.Entry<String, String> header : record.headers.entrySet()) {
+                    if (record.skipHeaders.contains(header.getKey())) {
+                        continue;
+                    }
+                    if (! first) {
+                        out.append(',');
+                    }
+                    appendQuoted(out, header.getKey());
+                    out.append(':');
+                    appendQuoted(out, header.getValue());
+                    first = false;
+                }
+                out.append('}');
+            }
+            appendJson(out, "entity", record.entity);
+            out.append('}');
+        }
+    };
+
+    abstract void format(AccessLogRecord record, StringBuilder out);
+
+    private static void appendText(StringBuilder out, String name, String value) {
+        if (value != null) {
+            out.append(", ").append(name).append(": ").append(value);
+        }
+    }
+
+    /**
+     * Slår sammen linjer i entiteten til én linje, uten innrykk.
+     */
+    static void appendCompacted(StringBuilder out, String entity) {
+        int start = 0;
+        boolean first = true;
+        while (start <= entity.length()) {
+            int end = entity.indexOf('\n', start);
+            if (end < 0) {
+                end = entity.length();
+            }
+            int lineStart = start;
+            int lineEnd = end;
+            while (lineStart < lineEnd && entity.charAt(lineStart) <= ' ') {
+                lineStart++;
+            }
+            while (lineEnd > lineStart && entity.charAt(lineEnd - 1) <= ' ') {
+                lineEnd--;
+            }
+            if (! first) {
+                out.append(' ');
+            }
+            out.append(entity, lineStart, lineEnd);
+            first = false;
+            start = end + 1;
+        }
+    }
+
+    private static void appendKeyValue(StringBuilder out, String key, String value) {
+        if (value != null) {
+            out.append(' ').append(key).append('=');
+            appendQuoted(out, value);
+        }
+    }
+
+    private static void appendJson(StringBuilder out, String key, String value) {
+        if (value != null) {
+            out.append(",\"").append(key).append("\":");
+            appendQuoted(out, value);
+        }
+    }
+
+    private static void appendQuoted(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
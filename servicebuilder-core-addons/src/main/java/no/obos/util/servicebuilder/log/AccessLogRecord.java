@@ -0,0 +1,39 @@
+package no.obos.util.servicebuilder.log;
+
+import com.google.common.collect.ImmutableSet;
+import no.obos.util.servicebuilder.model.LogLevel;
+
+import java.util.Map;
+
+/**
+ * Gjenbrukbar plass i {@link AccessLog}. Feltene skrives av filtertråden og leses av loggtråden.
+ */
+class AccessLogRecord {
+    boolean request;
+    LogLevel logLevel;
+    String uri;
+    String clientApplication;
+    String user;
+    Map<String, String> headers;
+    ImmutableSet<String> skipHeaders;
+    String entity;
+    int status;
+    long totalMillis;
+    /**
+     * X-OBOS-REQUEST-ID fra MDC på filtertråden.
+     */
+    String requestId;
+
+    void clear() {
+        logLevel = null;
+        uri = null;
+        clientApplication = null;
+        user = null;
+        headers = null;
+        skipHeaders = null;
+        entity = null;
+        status = 0;
+        totalMillis = - 1;
+        requestId = null;
+    }
+}
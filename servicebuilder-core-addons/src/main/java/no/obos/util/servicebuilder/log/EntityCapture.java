@@ -0,0 +1,94 @@
+package no.obos.util.servicebuilder.log;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Tar vare på de første {@link #MAX_CAPTURE} bytene av en strøm mens den leses eller skrives, uten å buffre strømmen.
+ * Bufferne gjenbrukes via en felles pool.
+ */
+class EntityCapture {
+    static final int MAX_CAPTURE = 4096;
+    static final int POOL_SIZE = 256;
+    private static final Queue<byte[]> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private byte[] buffer;
+    private int length;
+
+    EntityCapture() {
+        byte[] pooled = pool.poll();
+        this.buffer = pooled != null ? pooled : new byte[MAX_CAPTURE];
+    }
+
+    void capture(int b) {
+        if (buffer != null && length < buffer.length) {
+            buffer[length++] = (byte) b;
+        }
+    }
+
+    void capture(byte[] bytes, int offset, int count) {
+        if (buffer == null || count <= 0) {
+            return;
+        }
+        int toCopy = Math.min(count, buffer.length - length);
+        if (toCopy > 0) {
+            System.arraycopy(bytes, offset, buffer, length, toCopy);
+            length += toCopy;
+        }
+    }
+
+    /**
+     * Dekoder bytene som faktisk er lest eller skrevet, og gir bufferet tilbake til poolen.
+     */
+    String release() {
+        if (buffer == null) {
+            return null;
+        }
+        String captured = length > 0 ? new String(buffer, 0, length, StandardCharsets.UTF_8) : null;
+        pool.offer(buffer);
+        buffer = null;
+        return captured;
+    }
+
+    InputStream tee(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    capture(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int count) throws IOException {
+                int read = super.read(bytes, offset, count);
+                capture(bytes, offset, read);
+                return read;
+            }
+        };
+    }
+
+    OutputStream tee(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                capture(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int count) throws IOException {
+                out.write(bytes, offset, count);
+                capture(bytes, offset, count);
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package no.obos.util.servicebuilder.log;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import lombok.AllArgsConstructor;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import java.util.function.Predicate;
+
+/**
+ * Avgjør hvilke kall som ikke skal logges: gitte HTTP-metoder, kall der rå path inneholder en av gitte
+ * tekstbiter, og eventuelle egne filtre. Path leses fra request-URI uten å bygge nye strenger.
+ */
+@AllArgsConstructor
+public class FastTrackMatcher implements Predicate<ContainerRequestContext> {
+    public final ImmutableSet<String> methods;
+    public final ImmutableList<String> pathFragments;
+    public final ImmutableList<Predicate<ContainerRequestContext>> filters;
+
+    public static final FastTrackMatcher defaults = new FastTrackMatcher(
+            ImmutableSet.of("OPTIONS"),
+            ImmutableList.of("swagger.json", "metrics"),
+            ImmutableList.of()
+    );
+
+    public static FastTrackMatcher ofFilters(ImmutableList<Predicate<ContainerRequestContext>> filters) {
+        return new FastTrackMatcher(ImmutableSet.of(), ImmutableList.of(), filters);
+    }
+
+    @Override
+    public boolean test(ContainerRequestContext request) {
+        if (methods.contains(request.getMethod())) {
+            return true;
+        }
+        if (! pathFragments.isEmpty() && request.getUriInfo() != null) {
+            String path = request.getUriInfo().getRequestUri().getRawPath();
+            if (path != null) {
+                for (int i = 0; i < pathFragments.size(); i++) {
+                    if (path.contains(pathFragments.get(i))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i).test(request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public FastTrackMatcher plusMethod(String method) {
+        return new FastTrackMatcher(ImmutableSet.<String>builder().addAll(methods).add(method).build(), pathFragments, filters);
+    }
+
+    public FastTrackMatcher plusPathFragment(String pathFragment) {
+        return new FastTrackMatcher(methods, ImmutableList.<String>builder().addAll(pathFragments).add(pathFragment).build(), filters);
+    }
+
+    public FastTrackMatcher plusFilter(Predicate<ContainerRequestContext> filter) {
+        return new FastTrackMatcher(methods, pathFragments, ImmutableList.<Predicate<ContainerRequestContext>>builder().addAll(filters).add(filter).build());
+    }
+}
@@ -0,0 +1,79 @@
+package no.obos.util.servicebuilder.log;
+
+import no.obos.util.servicebuilder.log.model.LogParams;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avgjør hvor mye som logges for et kall, ut fra sampling, grense per endepunkt og total trafikk.
+ */
+public class LogSampler {
+    public enum Sampling {
+        /**
+         * Request og response logges som vanlig.
+         */
+        FULL,
+        /**
+         * Kun status og tid logges, fordi trafikken er over terskelen.
+         */
+        STATUS_ONLY,
+        /**
+         * Ikke logget, med mindre svaret er en feil eller kallet er tregt.
+         */
+        SUPPRESSED
+    }
+
+    private final Map<Method, RateWindow> perEndpoint = new ConcurrentHashMap<>();
+    private final RateWindow throughput = new RateWindow();
+
+    public Sampling sample(Method method, LogParams logParams) {
+        if (logParams.logsEverything()) {
+            return Sampling.FULL;
+        }
+        return sample(method, logParams, System.currentTimeMillis());
+    }
+
+    Sampling sample(Method method, LogParams logParams, long nowMillis) {
+        if (logParams.statusOnlyAbovePerSecond > 0 && throughput.increment(nowMillis) > logParams.statusOnlyAbovePerSecond) {
+            return Sampling.STATUS_ONLY;
+        }
+        if (logParams.samplePercent < 100 && ThreadLocalRandom.current().nextDouble(100) >= logParams.samplePercent) {
+            return Sampling.SUPPRESSED;
+        }
+        if (logParams.maxPerSecond > 0 && method != null) {
+            RateWindow window = perEndpoint.get(method);
+            if (window == null) {
+                window = perEndpoint.computeIfAbsent(method, it -> new RateWindow());
+            }
+            if (window.increment(nowMillis) > logParams.maxPerSecond) {
+                return Sampling.SUPPRESSED;
+            }
+        }
+        return Sampling.FULL;
+    }
+
+    /**
+     * Teller kall innenfor inneværende sekund.
+     */
+    static class RateWindow {
+        private volatile long second = - 1;
+        private final AtomicInteger count = new AtomicInteger();
+
+        int increment(long nowMillis) {
+            long currentSecond = nowMillis / 1000;
+            if (currentSecond != second) {
+                synchronized (this) {
+                    if (currentSecond != second) {
+                        count.set(0);
+                        second = currentSecond;
+                    }
+                }
+            }
+            return count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package no.obos.util.servicebuilder.log;
+
+import no.obos.util.servicebuilder.log.model.LogParams;
+import no.obos.util.servicebuilder.log.model.LogRequest;
+import no.obos.util.servicebuilder.log.model.LogResponse;
+
+import javax.inject.Inject;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Logger request- og response-entiteter slik de faktisk leses og skrives, i stedet for å lese inn request på forhånd
+ * eller kalle toString på returobjektet. ServerLogFilter legger igjen et påbegynt logginnslag som fullføres her.
+ */
+public class ServerLogEntityInterceptor implements ReaderInterceptor, WriterInterceptor {
+    static final String PENDING_REQUEST_PROPERTY = "RestLogFilter.pendingRequest";
+    static final String PENDING_RESPONSE_PROPERTY = "RestLogFilter.pendingResponse";
+
+    final ServerLogger serverLogger;
+
+    @Inject
+    public ServerLogEntityInterceptor(ServerLogger serverLogger) {
+        this.serverLogger = serverLogger;
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        PendingRequest pending = (PendingRequest) context.getProperty(PENDING_REQUEST_PROPERTY);
+        if (pending == null) {
+            return context.proceed();
+        }
+        context.removeProperty(PENDING_REQUEST_PROPERTY);
+        EntityCapture capture = new EntityCapture();
+        context.setInputStream(capture.tee(context.getInputStream()));
+        try {
+            return context.proceed();
+        } finally {
+            serverLogger.handleRequest(pending.logRequest.entity(capture.release()).build(), pending.logParams);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        PendingResponse pending = (PendingResponse) context.getProperty(PENDING_RESPONSE_PROPERTY);
+        if (pending == null) {
+            context.proceed();
+            return;
+        }
+        context.removeProperty(PENDING_RESPONSE_PROPERTY);
+        EntityCapture capture = new EntityCapture();
+        context.setOutputStream(capture.tee(context.getOutputStream()));
+        try {
+            context.proceed();
+        } finally {
+            serverLogger.handleResponse(pending.logResponse.entity(capture.release()).build(), pending.logParams);
+        }
+    }
+
+    static class PendingRequest {
+        final LogRequest.LogRequestBuilder logRequest;
+        final LogParams logParams;
+
+        PendingRequest(LogRequest.LogRequestBuilder logRequest, LogParams logParams) {
+            this.logRequest = logRequest;
+            this.logParams = logParams;
+        }
+    }
+
+    static class PendingResponse {
+        final LogResponse.LogResponseBuilder logResponse;
+        final LogParams logParams;
+
+        PendingResponse(LogResponse.LogResponseBuilder logResponse, LogParams logParams) {
+            this.logResponse = logResponse;
+            this.logParams = logParams;
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package no.obos.util.servicebuilder.log;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.log.LogSampler.Sampling;
+import no.obos.util.servicebuilder.log.ServerLogEntityInterceptor.PendingRequest;
+import no.obos.util.servicebuilder.log.ServerLogEntityInterceptor.PendingResponse;
 import no.obos.util.servicebuilder.log.model.LogParams;
 import no.obos.util.servicebuilder.log.model.LogRequest;
 import no.obos.util.servicebuilder.log.model.LogResponse;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
 import no.obos.util.servicebuilder.model.Constants;
+import no.obos.util.servicebuilder.model.ProblemResponse;
 import no.obos.util.servicebuilder.model.UibBruker;
 import no.obos.util.servicebuilder.util.FormatUtil;
 
@@ -20,17 +23,24 @@ import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Context;
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Map;
 
 @Slf4j
 public class ServerLogFilter implements ContainerRequestFilter, ContainerResponseFilter {
     public static final String PROPERTYNAME = "RestLogFilter.startTime";
+    /**
+     * Avgjørelsen fra request-filteret, slik at response-filteret slipper å regne den ut på nytt.
+     */
+    static final String LOG_PARAMS_PROPERTY = "RestLogFilter.logParams";
+    static final String SAMPLING_PROPERTY = "RestLogFilter.sampling";
+    private static final LogParams NOT_LOGGED = LogParams.defaults.enableLogging(false);
+
+    private static final Counter suppressed = MetricsRegistry.counter("serverlog.suppressed");
+    private static final Counter statusOnly = MetricsRegistry.counter("serverlog.statusonly");
+    private static final Counter promoted = MetricsRegistry.counter("serverlog.promoted");
 
     final ResourceInfo resourceInfo;
 
@@ -38,8 +48,6 @@ public class ServerLogFilter implements ContainerRequestFilter, ContainerRespons
 
     final Provider<UibBruker> uibBrukerProvider;
 
-    final static int MAX_ENTITY_READ = 4096;
-
     @Inject
     public ServerLogFilter(@Context ResourceInfo resourceInfo, ServerLogger serverLogger, Provider<UibBruker> uibBrukerProvider) {
         this.resourceInfo = resourceInfo;
@@ -47,37 +55,10 @@ public class ServerLogFilter implements ContainerRequestFilter, ContainerRespons
         this.uibBrukerProvider = uibBrukerProvider;
     }
 
-    static String extractRequestEntity(ContainerRequestContext request) {
-        if (request.hasEntity()) {
-            InputStream inputStreamOriginal = request.getEntityStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamOriginal, MAX_ENTITY_READ);
-            bufferedInputStream.mark(MAX_ENTITY_READ);
-            byte[] bytes = new byte[MAX_ENTITY_READ];
-            int read;
-            try {
-                read = bufferedInputStream.read(bytes, 0, MAX_ENTITY_READ);
-                bufferedInputStream.reset();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            request.setEntityStream(bufferedInputStream);
-
-            return new String(bytes, Charsets.UTF_8);
-        }
-        return null;
-    }
-
-
     @Override
     public void filter(ContainerRequestContext request) throws IOException {
-        if (serverLogger.fastTrackFilters.stream().anyMatch(it -> it.test(request))) {
-            return;
-        }
-
-        Class<?> handlingClass = resourceInfo.getResourceClass();
-        Method handlingMethod = resourceInfo.getResourceMethod();
-
-        LogParams logParams = serverLogger.LogParamsForCall(handlingClass, handlingMethod);
+        LogParams logParams = decide(request);
+        request.setProperty(LOG_PARAMS_PROPERTY, logParams);
 
         if (! logParams.enableLogging) {
             return;
@@ -85,21 +66,27 @@ public class ServerLogFilter implements ContainerRequestFilter, ContainerRespons
 
         request.setProperty(PROPERTYNAME, System.nanoTime());
 
+        Sampling sampling = serverLogger.sampler.sample(resourceInfo.getResourceMethod(), logParams);
+        request.setProperty(SAMPLING_PROPERTY, sampling);
+        if (sampling != Sampling.FULL) {
+            return;
+        }
+
         LogRequest.LogRequestBuilder logRequest = LogRequest.builder();
 
         logRequest.uri(getUri(request));
 
         UibBruker uibBruker = uibBrukerProvider.get();
         if (uibBruker != null) {
-            List<String> bruker = Lists.newArrayList();
-            bruker.add(uibBruker.fornavn + " " + uibBruker.etternavn);
+            StringBuilder bruker = new StringBuilder()
+                    .append(uibBruker.fornavn).append(' ').append(uibBruker.etternavn);
             if (! Strings.isNullOrEmpty(uibBruker.adBrukernavn)) {
-                bruker.add(uibBruker.adBrukernavn);
+                bruker.append(", ").append(uibBruker.adBrukernavn);
             }
             if (! Strings.isNullOrEmpty(uibBruker.personid)) {
-                bruker.add(uibBruker.personid);
+                bruker.append(", ").append(uibBruker.personid);
             }
-            logRequest.user(Joiner.on(", ").join(bruker));
+            logRequest.user(bruker.toString());
         }
 
 
@@ -113,10 +100,10 @@ public class ServerLogFilter implements ContainerRequestFilter, ContainerRespons
             logRequest.headers((ImmutableMap.copyOf(headers)));
         }
 
-
-
-        if (logParams.logRequestPayload) {
-            logRequest.entity(extractRequestEntity(request));
+        if (logParams.logRequestPayload && request.hasEntity()) {
+            // Entiteten logges av ServerLogEntityInterceptor når ressursen faktisk leser den
+            request.setProperty(ServerLogEntityInterceptor.PENDING_REQUEST_PROPERTY, new PendingRequest(logRequest, logParams));
+            return;
         }
 
         serverLogger.handleRequest(logRequest.build(), logParams);
@@ -126,45 +113,80 @@ public class ServerLogFilter implements ContainerRequestFilter, ContainerRespons
     public void filter(final ContainerRequestContext request, final ContainerResponseContext response)
             throws IOException
     {
-        if (serverLogger.fastTrackFilters.stream().anyMatch(it -> it.test(request))) {
-            return;
+        LogParams logParams = (LogParams) request.getProperty(LOG_PARAMS_PROPERTY);
+        if (logParams == null) {
+            // Request-filteret kjørte ikke, f.eks. fordi kallet ble avvist av et tidligere filter
+            logParams = decide(request);
         }
 
-        Class<?> handlingClass = resourceInfo.getResourceClass();
-        Method handlingMethod = resourceInfo.getResourceMethod();
-        LogParams logParams = serverLogger.LogParamsForCall(handlingClass, handlingMethod);
-
         if (! logParams.enableLogging) {
             return;
         }
 
+        PendingRequest unreadRequest = (PendingRequest) request.getProperty(ServerLogEntityInterceptor.PENDING_REQUEST_PROPERTY);
+        if (unreadRequest != null) {
+            // Ressursen leste aldri entiteten
+            request.removeProperty(ServerLogEntityInterceptor.PENDING_REQUEST_PROPERTY);
+            serverLogger.handleRequest(unreadRequest.logRequest.build(), unreadRequest.logParams);
+        }
+
+        Long totalMillis = null;
+
+        Long startNanos = (Long) request.getProperty(PROPERTYNAME);
+        if (startNanos != null) {
+            long totalNanos = System.nanoTime() - startNanos;
+            totalMillis = totalNanos / 1_000_000;
+        }
+
+        Sampling sampling = (Sampling) request.getProperty(SAMPLING_PROPERTY);
+        if (sampling == Sampling.SUPPRESSED) {
+            if (! alwaysLog(logParams, response.getStatus(), totalMillis)) {
+                suppressed.inc();
+                return;
+            }
+            promoted.inc();
+        }
+
         LogResponse.LogResponseBuilder logResponse = LogResponse.builder();
 
         logResponse.uri(getUri(request));
         logResponse.status(response.getStatus());
+        logResponse.totalMillis(totalMillis);
+
+        if (sampling == Sampling.STATUS_ONLY) {
+            statusOnly.inc();
+            serverLogger.handleResponse(logResponse.build(), logParams);
+            return;
+        }
 
         if (logParams.logHeaders) {
             Map<String, String> headers = FormatUtil.MultiMapAsStringMap(response.getStringHeaders());
             logResponse.headers((ImmutableMap.copyOf(headers)));
         }
 
-        if (logParams.logResponseEntity) {
-            if (response.hasEntity()) {
-                logResponse.entity(response.getEntity());
-            }
-        }
-        Long totalMillis = null;
-
-        Long startNanos = (Long) request.getProperty(PROPERTYNAME);
-        if (startNanos != null) {
-            long totalNanos = System.nanoTime() - startNanos;
-            totalMillis = totalNanos / 1_000_000;
+        // Feilresponser er allerede logget av ExceptionMapper
+        if (logParams.logResponseEntity && response.hasEntity() && ! (response.getEntity() instanceof ProblemResponse)
+                && ! HttpMethod.HEAD.equals(request.getMethod())) {
+            // Entiteten logges av ServerLogEntityInterceptor mens den skrives
+            request.setProperty(ServerLogEntityInterceptor.PENDING_RESPONSE_PROPERTY, new PendingResponse(logResponse, logParams));
+            return;
         }
-        logResponse.totalMillis(totalMillis);
 
         serverLogger.handleResponse(logResponse.build(), logParams);
     }
 
+    private static boolean alwaysLog(LogParams logParams, int status, Long totalMillis) {
+        return logParams.alwaysLogErrors && status >= 400
+                || logParams.alwaysLogSlowerThanMillis > 0 && totalMillis != null && totalMillis >= logParams.alwaysLogSlowerThanMillis;
+    }
+
+    private LogParams decide(ContainerRequestContext request) {
+        if (serverLogger.fastTrack.test(request)) {
+            return NOT_LOGGED;
+        }
+        return serverLogger.LogParamsForCall(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+    }
+
     private String getUri(ContainerRequestContext request) {
         String queryParamString = request.getUriInfo().getRequestUri().getQuery();
 
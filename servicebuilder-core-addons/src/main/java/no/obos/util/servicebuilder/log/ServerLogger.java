@@ -1,10 +1,6 @@
 package no.obos.util.servicebuilder.log;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import no.obos.util.servicebuilder.annotations.Log;
@@ -13,35 +9,67 @@ import no.obos.util.servicebuilder.annotations.LogResponseEntity;
 import no.obos.util.servicebuilder.log.model.LogParams;
 import no.obos.util.servicebuilder.log.model.LogRequest;
 import no.obos.util.servicebuilder.log.model.LogResponse;
-import no.obos.util.servicebuilder.model.ProblemResponse;
 import no.obos.util.servicebuilder.util.AnnotationUtil;
 import no.obos.util.servicebuilder.util.LogUtil;
 
 import javax.ws.rs.container.ContainerRequestContext;
 import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 @Slf4j
 @AllArgsConstructor
 public class ServerLogger {
 
-    public final ImmutableList<Predicate<ContainerRequestContext>> fastTrackFilters;
+    public final FastTrackMatcher fastTrack;
     public final LogParams logParams;
+    /**
+     * Null gir synkron logging på kallende tråd.
+     */
+    public final AccessLog accessLog;
+    public final AccessLogFormat accessLogFormat;
+
+    /**
+     * LogParams per ressursmetode, beregnet ved første kall.
+     */
+    private final Map<Method, LogParams> logParamsPerMethod = new ConcurrentHashMap<>();
+
+    public final LogSampler sampler = new LogSampler();
+
+    public ServerLogger(ImmutableList<Predicate<ContainerRequestContext>> fastTrackFilters, LogParams logParams) {
+        this(FastTrackMatcher.ofFilters(fastTrackFilters), logParams, null, AccessLogFormat.TEXT);
+    }
+
+    /**
+     * @deprecated Bruk fastTrack. Reglene returneres som ett filter.
+     */
+    @Deprecated
+    public ImmutableList<Predicate<ContainerRequestContext>> fastTrackFilters() {
+        return ImmutableList.of(fastTrack);
+    }
 
 
     public LogParams LogParamsForCall(Class<?> clazz, Method method) {
         if (clazz == null || method == null) {
             return logParams;
         }
+        LogParams cached = logParamsPerMethod.get(method);
+        return cached != null ? cached : logParamsPerMethod.computeIfAbsent(method, this::resolveLogParams);
+    }
 
+    private LogParams resolveLogParams(Method method) {
         LogParams ret = logParams;
 
         Log enableLogging = AnnotationUtil.getAnnotation(Log.class, method);
         if (enableLogging != null) {
             ret = ret.enableLogging(enableLogging.value());
+            if (enableLogging.samplePercent() >= 0) {
+                ret = ret.samplePercent(enableLogging.samplePercent());
+            }
+            if (enableLogging.maxPerSecond() >= 0) {
+                ret = ret.maxPerSecond(enableLogging.maxPerSecond());
+            }
         }
 
         LogRequestEntity logRequestEntity = AnnotationUtil.getAnnotation(LogRequestEntity.class, method);
@@ -58,57 +86,22 @@ public class ServerLogger {
     }
 
     public void handleRequest(LogRequest logRequest, LogParams logParams) {
-
-        List<String> entries = Lists.newArrayList();
-        entries.add(logRequest.uri);
-        if (logRequest.clientApplication != null) {
-            entries.add("Client: " + logRequest.clientApplication);
+        if (accessLog != null) {
+            accessLog.publishRequest(logRequest, logParams);
+            return;
         }
-        if (logRequest.user != null) {
-            entries.add("User: " + logRequest.user);
-        }
-        if (logParams.logHeaders && logRequest.headers != null) {
-            entries.add("Headers: " + getHeaders(logRequest.headers, logParams)
-            );
-        }
-        if (logParams.logResponseEntity && ! Strings.isNullOrEmpty(logRequest.entity)) {
-            List<String> lines = Splitter.on('\n').splitToList(logRequest.entity)
-                    .stream()
-                    .map(String::trim)
-                    .collect(Collectors.toList());
-            String compactedEntity = Joiner.on(' ').join(lines);
-            entries.add("Entity: " + compactedEntity);
-        }
-        String logString = Joiner.on(", ").join(entries);
-        LogUtil.doLog(logString, logParams.logLevel, log);
+        AccessLogRecord record = new AccessLogRecord();
+        AccessLog.fillRequest(record, logRequest, logParams);
+        LogUtil.doLog(AccessLog.format(record, accessLogFormat), logParams.logLevel, log);
     }
 
     public void handleResponse(LogResponse logResponse, LogParams logParams) {
-        List<String> entries = Lists.newArrayList();
-        entries.add(logResponse.uri);
-        entries.add("Status: " + logResponse.status);
-        if (logResponse.totalMillis != null) {
-            entries.add("Millis: " + logResponse.totalMillis);
-        }
-        if (logParams.logHeaders && logResponse.headers != null) {
-            entries.add("Headers: " + getHeaders(logResponse.headers, logParams)
-            );
-        }
-        if (logParams.logResponseEntity && logResponse.entity != null) {
-            if (! (logResponse.entity instanceof ProblemResponse)) {
-                entries.add("Entity: " + logResponse.entity.toString());
-            }
+        if (accessLog != null) {
+            accessLog.publishResponse(logResponse, logParams);
+            return;
         }
-        String logString = Joiner.on(", ").join(entries);
-        LogUtil.doLog(logString, logParams.logLevel, log);
-    }
-
-    private List<String> getHeaders(Map<String, String> headers, LogParams logParams) {
-        return headers.entrySet().stream()
-                .filter(entry -> ! logParams.skipHeaders.contains(entry.getKey()))
-                .map(entry -> entry.getKey() + ": " + entry.getValue())
-                .collect(Collectors.toList());
+        AccessLogRecord record = new AccessLogRecord();
+        AccessLog.fillResponse(record, logResponse, logParams);
+        LogUtil.doLog(AccessLog.format(record, accessLogFormat), logParams.logLevel, log);
     }
-
-
 }
@@ -50,7 +50,50 @@ public class LogParams {
     @Wither(AccessLevel.PRIVATE)
     public final boolean logRequestPayload;
 
-    public final static LogParams defaults = new LogParams(true, LogLevel.INFO, false, ImmutableSet.of(), true, true);
+    /**
+     * Andel av kallene (i prosent) som logges. Resten logges kun ved feil eller trege kall.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final double samplePercent;
+
+    /**
+     * Maks antall kall per sekund som logges per endepunkt. 0 betyr ubegrenset.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int maxPerSecond;
+
+    /**
+     * Logg alltid svar med feilstatus (4xx og 5xx), også for kall som ellers ikke logges.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean alwaysLogErrors;
+
+    /**
+     * Logg alltid kall som tar lenger tid enn dette. 0 slår av.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final long alwaysLogSlowerThanMillis;
+
+    /**
+     * Over så mange kall per sekund totalt logges bare status og tid, uten headere og entiteter. 0 slår av.
+     */
+    @Wither(AccessLevel.PRIVATE)
+    public final int statusOnlyAbovePerSecond;
+
+    public final static LogParams defaults = new LogParams(true, LogLevel.INFO, false, ImmutableSet.of(), true, true,
+            100, 0, true, 1_000, 0);
+
+    public LogParams(boolean enableLogging, LogLevel logLevel, boolean logHeaders, ImmutableSet<String> skipHeaders, boolean logResponseEntity, boolean logRequestPayload) {
+        this(enableLogging, logLevel, logHeaders, skipHeaders, logResponseEntity, logRequestPayload,
+                defaults.samplePercent, defaults.maxPerSecond, defaults.alwaysLogErrors, defaults.alwaysLogSlowerThanMillis, defaults.statusOnlyAbovePerSecond);
+    }
+
+    /**
+     * Om alle kall logges fullt ut, slik at sampling kan hoppes over.
+     */
+    public boolean logsEverything() {
+        return samplePercent >= 100 && maxPerSecond <= 0 && statusOnlyAbovePerSecond <= 0;
+    }
 
     public LogParams enableLogging(boolean enableLogging) {
         return withEnableLogging(enableLogging);
@@ -65,7 +108,8 @@ public class LogParams {
     }
 
     public LogParams skipHeaders(ImmutableSet<String> skipHeaders) {
-        return this.skipHeaders == skipHeaders ? this : new LogParams(this.enableLogging, this.logLevel, this.logHeaders, skipHeaders, this.logResponseEntity, this.logRequestPayload);
+        return this.skipHeaders == skipHeaders ? this : new LogParams(this.enableLogging, this.logLevel, this.logHeaders, skipHeaders, this.logResponseEntity, this.logRequestPayload,
+                this.samplePercent, this.maxPerSecond, this.alwaysLogErrors, this.alwaysLogSlowerThanMillis, this.statusOnlyAbovePerSecond);
     }
 
     public LogParams clearSkipHeaders() {
@@ -83,4 +127,24 @@ public class LogParams {
     public LogParams logRequestPayload(boolean logRequestPayload) {
         return withLogRequestPayload(logRequestPayload);
     }
+
+    public LogParams samplePercent(double samplePercent) {
+        return withSamplePercent(samplePercent);
+    }
+
+    public LogParams maxPerSecond(int maxPerSecond) {
+        return withMaxPerSecond(maxPerSecond);
+    }
+
+    public LogParams alwaysLogErrors(boolean alwaysLogErrors) {
+        return withAlwaysLogErrors(alwaysLogErrors);
+    }
+
+    public LogParams alwaysLogSlowerThanMillis(long alwaysLogSlowerThanMillis) {
+        return withAlwaysLogSlowerThanMillis(alwaysLogSlowerThanMillis);
+    }
+
+    public LogParams statusOnlyAbovePerSecond(int statusOnlyAbovePerSecond) {
+        return withStatusOnlyAbovePerSecond(statusOnlyAbovePerSecond);
+    }
 }
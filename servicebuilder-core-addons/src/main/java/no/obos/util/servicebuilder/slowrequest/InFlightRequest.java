@@ -0,0 +1,38 @@
+package no.obos.util.servicebuilder.slowrequest;
+
+/**
+ * Et kall som er under behandling. Feltene som endres skrives kun av watchdog-tråden.
+ */
+public class InFlightRequest {
+    public final Thread thread;
+    public final long startMillis;
+    final long startNanos;
+    public final String endpoint;
+    public final String uri;
+    public final String requestId;
+
+    volatile int samples;
+    volatile long nextSampleAtMillis;
+    volatile StackTraceElement[] lastStack;
+
+    InFlightRequest(Thread thread, long startMillis, long startNanos, String endpoint, String uri, String requestId) {
+        this.thread = thread;
+        this.startMillis = startMillis;
+        this.startNanos = startNanos;
+        this.endpoint = endpoint;
+        this.uri = uri;
+        this.requestId = requestId;
+    }
+
+    public long elapsedMillis(long nowNanos) {
+        return (nowNanos - startNanos) / 1_000_000;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public StackTraceElement[] getLastStack() {
+        return lastStack;
+    }
+}
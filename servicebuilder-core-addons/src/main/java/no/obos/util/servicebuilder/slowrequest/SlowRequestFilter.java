@@ -0,0 +1,83 @@
+package no.obos.util.servicebuilder.slowrequest;
+
+import com.google.common.base.Strings;
+import no.obos.util.servicebuilder.model.Constants;
+import org.slf4j.MDC;
+
+import javax.inject.Inject;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * Registrerer kallet i SlowRequestTracker mens det behandles. Har responsen en entitet avsluttes kallet først når
+ * entiteten er skrevet, slik at treg serialisering også fanges opp.
+ */
+public class SlowRequestFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+    static final String PROPERTYNAME = "SlowRequestFilter.inFlight";
+
+    final ResourceInfo resourceInfo;
+
+    final SlowRequestTracker tracker;
+
+    @Inject
+    public SlowRequestFilter(@Context ResourceInfo resourceInfo, SlowRequestTracker tracker) {
+        this.resourceInfo = resourceInfo;
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        String requestId = MDC.get(Constants.X_OBOS_REQUEST_ID);
+        if (Strings.isNullOrEmpty(requestId)) {
+            requestId = request.getHeaderString(Constants.X_OBOS_REQUEST_ID);
+        }
+        String uri = request.getMethod() + " " + request.getUriInfo().getPath();
+        request.setProperty(PROPERTYNAME, tracker.begin(endpoint(), uri, requestId));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        if (response.hasEntity()) {
+            // Avsluttes i aroundWriteTo
+            return;
+        }
+        InFlightRequest inFlight = (InFlightRequest) request.getProperty(PROPERTYNAME);
+        if (inFlight != null) {
+            request.removeProperty(PROPERTYNAME);
+            tracker.end(inFlight);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        InFlightRequest inFlight = (InFlightRequest) context.getProperty(PROPERTYNAME);
+        if (inFlight == null) {
+            context.proceed();
+            return;
+        }
+        context.removeProperty(PROPERTYNAME);
+        try {
+            context.proceed();
+        } finally {
+            tracker.end(inFlight);
+        }
+    }
+
+    private String endpoint() {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return "unknown";
+        }
+        Class<?> resourceClass = resourceInfo.getResourceClass() != null ? resourceInfo.getResourceClass() : method.getDeclaringClass();
+        return resourceClass.getSimpleName() + "." + method.getName();
+    }
+}
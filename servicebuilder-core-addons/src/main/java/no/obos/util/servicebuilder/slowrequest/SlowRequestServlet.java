@@ -0,0 +1,65 @@
+package no.obos.util.servicebuilder.slowrequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lister kall som har gått forbi terskelen, med stacktrace tatt nå. Med ?all=true listes alle kall under behandling.
+ */
+public class SlowRequestServlet extends HttpServlet {
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final SlowRequestTracker tracker;
+
+    public SlowRequestServlet(SlowRequestTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        long nowNanos = System.nanoTime();
+        boolean all = Boolean.parseBoolean(req.getParameter("all"));
+        Collection<InFlightRequest> requests = all ? new ArrayList<>(tracker.inFlight()) : tracker.slowRequests(nowNanos);
+
+        List<Map<String, Object>> result = requests.stream()
+                .sorted(Comparator.comparingLong(request -> request.startMillis))
+                .map(request -> describe(request, nowNanos))
+                .collect(Collectors.toList());
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/json");
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        mapper.writeValue(resp.getOutputStream(), result);
+    }
+
+    private Map<String, Object> describe(InFlightRequest request, long nowNanos) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("requestId", request.requestId);
+        description.put("endpoint", request.endpoint);
+        description.put("uri", request.uri);
+        description.put("thread", request.thread.getName());
+        description.put("started", Instant.ofEpochMilli(request.startMillis).toString());
+        description.put("elapsedMillis", request.elapsedMillis(nowNanos));
+        description.put("thresholdMillis", tracker.thresholdMillis(request.endpoint));
+        description.put("samples", request.getSamples());
+        description.put("stack", Arrays.stream(request.thread.getStackTrace())
+                .limit(SlowRequestTracker.MAX_LOGGED_FRAMES)
+                .map(StackTraceElement::toString)
+                .collect(Collectors.toList()));
+        return description;
+    }
+}
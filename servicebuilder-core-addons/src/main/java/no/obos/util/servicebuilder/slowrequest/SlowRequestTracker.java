@@ -0,0 +1,195 @@
+package no.obos.util.servicebuilder.slowrequest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.metrics.Timer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holder oversikt over kall under behandling, og logger stacktrace for kall som har gått lenger enn terskelen.
+ * <p>
+ * Terskelen er enten fast, eller (adaptive) to ganger p99 for endepunktet i forrige tidsvindu. Endepunkter med for
+ * få kall i forrige vindu bruker fast terskel. Hvert tregt kall samples på nytt hver gang tiden det har brukt dobles,
+ * opp til maxSamples ganger.
+ */
+@Slf4j
+public class SlowRequestTracker {
+    public static final long DEFAULT_THRESHOLD_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    public static final int DEFAULT_MAX_SAMPLES = 5;
+    static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long MIN_SAMPLES_FOR_ADAPTIVE = 100;
+    static final double ADAPTIVE_P99_FACTOR = 2;
+    static final long MIN_ADAPTIVE_THRESHOLD_MILLIS = 100;
+    static final long ABANDON_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int MAX_LOGGED_FRAMES = 40;
+
+    private final long thresholdMillis;
+    private final boolean adaptive;
+    private final long sampleIntervalMillis;
+    private final int maxSamples;
+
+    private final Map<InFlightRequest, Boolean> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile ScheduledExecutorService watchdog;
+
+    private final Counter detected = MetricsRegistry.counter("slowrequest.detected");
+    private final Counter sampled = MetricsRegistry.counter("slowrequest.samples");
+    private final Supplier<Number> inFlightGauge = inFlight::size;
+
+    public SlowRequestTracker(long thresholdMillis, boolean adaptive, long sampleIntervalMillis, int maxSamples) {
+        this.thresholdMillis = thresholdMillis;
+        this.adaptive = adaptive;
+        this.sampleIntervalMillis = sampleIntervalMillis;
+        this.maxSamples = maxSamples;
+    }
+
+    public void start() {
+        MetricsRegistry.registerGauge("slowrequest.inflight", inFlightGauge);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("slowrequest-watchdog-%d")
+                .setDaemon(true)
+                .build());
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                check(System.nanoTime());
+            } catch (RuntimeException e) {
+                log.warn("Slow request watchdog failed", e);
+            }
+        }, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        watchdog = executor;
+    }
+
+    public void stop() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        MetricsRegistry.removeGauge("slowrequest.inflight", inFlightGauge);
+    }
+
+    public InFlightRequest begin(String endpoint, String uri, String requestId) {
+        return begin(endpoint, uri, requestId, System.nanoTime());
+    }
+
+    InFlightRequest begin(String endpoint, String uri, String requestId, long nowNanos) {
+        InFlightRequest request = new InFlightRequest(Thread.currentThread(), System.currentTimeMillis(), nowNanos, endpoint, uri, requestId);
+        inFlight.put(request, Boolean.TRUE);
+        return request;
+    }
+
+    public void end(InFlightRequest request) {
+        end(request, System.nanoTime());
+    }
+
+    void end(InFlightRequest request, long nowNanos) {
+        inFlight.remove(request);
+        long elapsedMillis = request.elapsedMillis(nowNanos);
+        stats(request.endpoint).current.record(elapsedMillis, TimeUnit.MILLISECONDS);
+        if (request.samples > 0) {
+            log.info("Slow request {} {} [{}] finished after {} ms", request.endpoint, request.uri, request.requestId, elapsedMillis);
+        }
+    }
+
+    public Collection<InFlightRequest> inFlight() {
+        return inFlight.keySet();
+    }
+
+    public long thresholdMillis(String endpoint) {
+        if (! adaptive) {
+            return thresholdMillis;
+        }
+        EndpointStats stats = endpoints.get(endpoint);
+        return stats != null && stats.adaptiveThresholdMillis > 0 ? stats.adaptiveThresholdMillis : thresholdMillis;
+    }
+
+    /**
+     * Kall som har gått forbi terskelen for sitt endepunkt.
+     */
+    public List<InFlightRequest> slowRequests(long nowNanos) {
+        List<InFlightRequest> result = new ArrayList<>();
+        for (InFlightRequest request : inFlight.keySet()) {
+            if (request.elapsedMillis(nowNanos) >= thresholdMillis(request.endpoint)) {
+                result.add(request);
+            }
+        }
+        return result;
+    }
+
+    void check(long nowNanos) {
+        if (TimeUnit.NANOSECONDS.toMillis(nowNanos - windowStartNanos) >= WINDOW_MILLIS) {
+            rotate();
+            windowStartNanos = nowNanos;
+        }
+        for (InFlightRequest request : inFlight.keySet()) {
+            long elapsedMillis = request.elapsedMillis(nowNanos);
+            if (elapsedMillis >= ABANDON_AFTER_MILLIS) {
+                inFlight.remove(request);
+                continue;
+            }
+            if (request.samples >= maxSamples
+                    || elapsedMillis < thresholdMillis(request.endpoint)
+                    || elapsedMillis < request.nextSampleAtMillis) {
+                continue;
+            }
+            sample(request, elapsedMillis);
+        }
+    }
+
+    private void sample(InFlightRequest request, long elapsedMillis) {
+        StackTraceElement[] stack = request.thread.getStackTrace();
+        request.lastStack = stack;
+        request.nextSampleAtMillis = elapsedMillis * 2;
+        if (request.samples++ == 0) {
+            detected.inc();
+        }
+        sampled.inc();
+        log.warn("Slow request {} {} [{}] has run for {} ms on thread {}:{}",
+                request.endpoint, request.uri, request.requestId, elapsedMillis, request.thread.getName(), format(stack));
+    }
+
+    private void rotate() {
+        for (EndpointStats stats : endpoints.values()) {
+            Timer previous = stats.current;
+            stats.current = new Timer();
+            if (previous.getCount() >= MIN_SAMPLES_FOR_ADAPTIVE) {
+                stats.adaptiveThresholdMillis = Math.max(MIN_ADAPTIVE_THRESHOLD_MILLIS, (long) (previous.percentileMillis(99) * ADAPTIVE_P99_FACTOR));
+            } else {
+                stats.adaptiveThresholdMillis = 0;
+            }
+        }
+    }
+
+    private EndpointStats stats(String endpoint) {
+        EndpointStats stats = endpoints.get(endpoint);
+        return stats != null ? stats : endpoints.computeIfAbsent(endpoint, it -> new EndpointStats());
+    }
+
+    static String format(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        int frames = Math.min(stack.length, MAX_LOGGED_FRAMES);
+        for (int i = 0; i < frames; i++) {
+            sb.append("\n\tat ").append(stack[i]);
+        }
+        if (stack.length > frames) {
+            sb.append("\n\t... ").append(stack.length - frames).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private static class EndpointStats {
+        volatile Timer current = new Timer();
+        volatile long adaptiveThresholdMillis;
+    }
+}
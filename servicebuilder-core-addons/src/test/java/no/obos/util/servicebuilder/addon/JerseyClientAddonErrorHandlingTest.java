@@ -9,6 +9,7 @@ import no.obos.util.servicebuilder.client.StubGenerator;
 import no.obos.util.servicebuilder.exception.ExternalResourceException;
 import no.obos.util.servicebuilder.exception.ExternalResourceException.MetaData;
 import no.obos.util.servicebuilder.model.ProblemResponse;
+import no.obos.util.servicebuilder.model.PropertyProvider;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -17,6 +18,7 @@ import javax.ws.rs.client.Client;
 import java.net.URI;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -33,6 +35,18 @@ public class JerseyClientAddonErrorHandlingTest {
     );
 
 
+    @Test
+    public void urls_without_any_url_is_a_configuration_error() {
+        PropertyProvider properties = mock(PropertyProvider.class);
+        String key = TestService.instance.getName() + "." + JerseyClientAddon.CONFIG_KEY_URLS;
+        when(properties.has(key)).thenReturn(true);
+        when(properties.get(key)).thenReturn(" , ");
+
+        assertThatThrownBy(() -> JerseyClientAddon.defaults(TestService.instance).withProperties(properties))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(key);
+    }
+
     @Test
     public void error_handling_in_stub() {
         //given
@@ -90,5 +90,9 @@ public class JerseyClientAddonTest {
             assertThat(ex.dependent).isEqualTo(JerseyClientAddon.class);
         }
     }
-}
 
+    @Test(expected = IllegalArgumentException.class)
+    public void endpoints_requires_at_least_one_uri() {
+        JerseyClientAddon.defaults(TestService.instance).endpoints();
+    }
+}
@@ -61,6 +61,18 @@ public class MetricsAddonTest extends AddonTestBase {
                         + "\\{\"healthy\":false,\"message\":\"no\\.way\\.this\\.is\\.a\\.valid\\.address\\.zzz\"\\}\\}");
     }
 
+    @Test
+    public void servicebuilderMetrics() {
+        ServiceConfig serviceConfig = TestService.config
+                .addon(MetricsAddon.defaults);
+        Response call = testServiceRunnerJettyWithDefaults(serviceConfig)
+                .oneShot(target -> target
+                        .path("metrics")
+                        .path("servicebuilder")
+                        .request()
+                        .get()
+                );
+        assertThat(call.getStatus()).isEqualTo(200);
+        assertThat(call.readEntity(String.class)).startsWith("{");
+    }
 }
-
-
@@ -0,0 +1,46 @@
+package no.obos.util.servicebuilder.exception;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProblemDeduplicatorTest {
+    private final ProblemDeduplicator deduplicator = new ProblemDeduplicator(1_000);
+
+    @Test
+    public void identicalProblemsAreLoggedOncePerWindow() {
+        RuntimeException first = problem();
+        RuntimeException second = problem();
+
+        assertThat(deduplicator.register(first, 500, 0)).isEqualTo(0);
+        assertThat(deduplicator.register(second, 500, 10)).isEqualTo(ProblemDeduplicator.NOT_LOGGED);
+        assertThat(deduplicator.register(second, 500, 20)).isEqualTo(ProblemDeduplicator.NOT_LOGGED);
+        assertThat(deduplicator.register(second, 500, 1_000)).isEqualTo(2);
+    }
+
+    @Test
+    public void differentStatusIsNotIdentical() {
+        RuntimeException problem = problem();
+
+        assertThat(deduplicator.register(problem, 500, 0)).isEqualTo(0);
+        assertThat(deduplicator.register(problem, 503, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void differentOriginIsNotIdentical() {
+        assertThat(deduplicator.register(problem(), 500, 0)).isEqualTo(0);
+        assertThat(deduplicator.register(new RuntimeException("fra et annet sted"), 500, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void zeroWindowLogsEverything() {
+        ProblemDeduplicator disabled = new ProblemDeduplicator(0);
+
+        assertThat(disabled.register(problem(), 500, 0)).isEqualTo(0);
+        assertThat(disabled.register(problem(), 500, 0)).isEqualTo(0);
+    }
+
+    private static RuntimeException problem() {
+        return new RuntimeException("avhengighet nede");
+    }
+}
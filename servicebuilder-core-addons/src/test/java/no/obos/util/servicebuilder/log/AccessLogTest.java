@@ -0,0 +1,64 @@
+package no.obos.util.servicebuilder.log;
+
+import no.obos.util.servicebuilder.log.model.LogParams;
+import no.obos.util.servicebuilder.log.model.LogRequest;
+import no.obos.util.servicebuilder.log.model.LogResponse;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccessLogTest {
+
+    @Test
+    public void textFormatMatchesSynchronousLog() {
+        AccessLogRecord request = new AccessLogRecord();
+        AccessLog.fillRequest(request, LogRequest.builder()
+                .uri("POST /api/thing")
+                .user("Ola Nordmann")
+                .entity("{\n  \"a\": 1,\n  \"b\": 2\n}")
+                .build(), LogParams.defaults);
+        AccessLogRecord response = new AccessLogRecord();
+        AccessLog.fillResponse(response, LogResponse.builder()
+                .uri("POST /api/thing")
+                .status(201)
+                .totalMillis(12L)
+                .build(), LogParams.defaults);
+
+        assertThat(AccessLog.format(request, AccessLogFormat.TEXT))
+                .isEqualTo("POST /api/thing, User: Ola Nordmann, Entity: { \"a\": 1, \"b\": 2 }");
+        assertThat(AccessLog.format(response, AccessLogFormat.TEXT))
+                .isEqualTo("POST /api/thing, Status: 201, Millis: 12");
+        assertThat(AccessLog.format(response, AccessLogFormat.JSON))
+                .isEqualTo("{\"type\":\"response\",\"uri\":\"POST /api/thing\",\"status\":201,\"millis\":12}");
+    }
+
+    @Test
+    public void fullBufferDropsWithDropPolicy() {
+        AccessLog accessLog = new AccessLog(2, AccessLog.OverflowPolicy.DROP, AccessLogFormat.TEXT);
+        LogResponse response = LogResponse.builder().uri("GET /").status(200).build();
+        long droppedBefore = MetricsRegistry.counter("serverlog.dropped").get();
+
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isTrue();
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isTrue();
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isFalse();
+        assertThat(MetricsRegistry.counter("serverlog.dropped").get()).isEqualTo(droppedBefore + 1);
+
+        assertThat(accessLog.drain()).isEqualTo(2);
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isTrue();
+    }
+
+    @Test
+    public void blockPolicyDropsOnceWriterHasStopped() {
+        AccessLog accessLog = new AccessLog(2, AccessLog.OverflowPolicy.BLOCK, AccessLogFormat.TEXT);
+        LogResponse response = LogResponse.builder().uri("GET /").status(200).build();
+        accessLog.start();
+        assertThat(MetricsRegistry.snapshot()).containsKey("serverlog.buffered");
+        accessLog.stop();
+        assertThat(MetricsRegistry.snapshot()).doesNotContainKey("serverlog.buffered");
+
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isTrue();
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isTrue();
+        assertThat(accessLog.publishResponse(response, LogParams.defaults)).isFalse();
+    }
+}
@@ -0,0 +1,45 @@
+package no.obos.util.servicebuilder.log;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EntityCaptureTest {
+
+    @Test
+    public void readEntityIsPassedThroughAndCaptured() throws Exception {
+        EntityCapture capture = new EntityCapture();
+        InputStream in = capture.tee(new ByteArrayInputStream("{\"navn\":\"Åse\"}".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] read = ByteStreams.toByteArray(in);
+
+        assertThat(new String(read, StandardCharsets.UTF_8)).isEqualTo("{\"navn\":\"Åse\"}");
+        assertThat(capture.release()).isEqualTo("{\"navn\":\"Åse\"}");
+    }
+
+    @Test
+    public void captureIsBoundedButStreamIsNot() throws Exception {
+        String entity = Strings.repeat("x", EntityCapture.MAX_CAPTURE * 2);
+        EntityCapture capture = new EntityCapture();
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        OutputStream out = capture.tee(target);
+
+        out.write(entity.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(target.size()).isEqualTo(entity.length());
+        assertThat(capture.release()).hasSize(EntityCapture.MAX_CAPTURE);
+    }
+
+    @Test
+    public void emptyEntityIsNull() {
+        assertThat(new EntityCapture().release()).isNull();
+    }
+}
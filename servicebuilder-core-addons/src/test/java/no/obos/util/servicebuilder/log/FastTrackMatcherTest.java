@@ -0,0 +1,50 @@
+package no.obos.util.servicebuilder.log;
+
+import no.obos.util.servicebuilder.addon.ServerLogAddon;
+import org.junit.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FastTrackMatcherTest {
+
+    @Test
+    public void defaultsSkipOptionsSwaggerAndMetrics() {
+        assertThat(FastTrackMatcher.defaults.test(request("OPTIONS", "http://host/api/thing"))).isTrue();
+        assertThat(FastTrackMatcher.defaults.test(request("GET", "http://host/api/swagger.json"))).isTrue();
+        assertThat(FastTrackMatcher.defaults.test(request("GET", "http://host/metrics/ping"))).isTrue();
+        assertThat(FastTrackMatcher.defaults.test(request("GET", "http://host/api/thing?q=metrics"))).isFalse();
+    }
+
+    @Test
+    public void addedFragmentsAndFiltersAreUsed() {
+        FastTrackMatcher matcher = FastTrackMatcher.defaults
+                .plusPathFragment("/health")
+                .plusFilter(request -> "HEAD".equals(request.getMethod()));
+
+        assertThat(matcher.test(request("GET", "http://host/api/health"))).isTrue();
+        assertThat(matcher.test(request("HEAD", "http://host/api/thing"))).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedFastTrackFiltersUseTheMatcher() {
+        assertThat(ServerLogAddon.defaults.fastTrackFilters()).hasSize(1);
+        assertThat(ServerLogAddon.defaults.fastTrackFilters().get(0).test(request("OPTIONS", "http://host/api/thing"))).isTrue();
+        assertThat(ServerLogAddon.defaults.fastTrackFilters().get(0).test(request("GET", "http://host/api/thing"))).isFalse();
+    }
+
+    private static ContainerRequestContext request(String method, String uri) {
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create(uri));
+        return request;
+    }
+}
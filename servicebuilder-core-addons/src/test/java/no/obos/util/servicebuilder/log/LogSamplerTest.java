@@ -0,0 +1,42 @@
+package no.obos.util.servicebuilder.log;
+
+import no.obos.util.servicebuilder.log.LogSampler.Sampling;
+import no.obos.util.servicebuilder.log.model.LogParams;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogSamplerTest {
+    private final LogSampler sampler = new LogSampler();
+    private final Method method = LogSamplerTest.class.getDeclaredMethods()[0];
+
+    @Test
+    public void defaultsLogEverything() {
+        assertThat(sampler.sample(method, LogParams.defaults)).isEqualTo(Sampling.FULL);
+    }
+
+    @Test
+    public void zeroPercentSuppresses() {
+        assertThat(sampler.sample(method, LogParams.defaults.samplePercent(0))).isEqualTo(Sampling.SUPPRESSED);
+    }
+
+    @Test
+    public void rateLimitPerEndpoint() {
+        LogParams logParams = LogParams.defaults.maxPerSecond(2);
+
+        assertThat(sampler.sample(method, logParams, 1_000)).isEqualTo(Sampling.FULL);
+        assertThat(sampler.sample(method, logParams, 1_100)).isEqualTo(Sampling.FULL);
+        assertThat(sampler.sample(method, logParams, 1_200)).isEqualTo(Sampling.SUPPRESSED);
+        assertThat(sampler.sample(method, logParams, 2_000)).isEqualTo(Sampling.FULL);
+    }
+
+    @Test
+    public void downgradesToStatusOnlyAboveThroughputThreshold() {
+        LogParams logParams = LogParams.defaults.statusOnlyAbovePerSecond(1);
+
+        assertThat(sampler.sample(method, logParams, 1_000)).isEqualTo(Sampling.FULL);
+        assertThat(sampler.sample(method, logParams, 1_500)).isEqualTo(Sampling.STATUS_ONLY);
+    }
+}
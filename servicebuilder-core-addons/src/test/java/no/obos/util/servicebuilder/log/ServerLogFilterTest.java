@@ -0,0 +1,66 @@
+package no.obos.util.servicebuilder.log;
+
+import com.google.common.collect.ImmutableList;
+import no.obos.util.servicebuilder.log.model.LogParams;
+import no.obos.util.servicebuilder.log.model.LogResponse;
+import no.obos.util.servicebuilder.model.ProblemResponse;
+import org.junit.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ResourceInfo;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerLogFilterTest {
+    private final List<LogResponse> logged = new ArrayList<>();
+    private final ServerLogger serverLogger = new ServerLogger(ImmutableList.of(), LogParams.defaults) {
+        @Override
+        public void handleResponse(LogResponse logResponse, LogParams logParams) {
+            logged.add(logResponse);
+        }
+    };
+    private final ServerLogFilter filter = new ServerLogFilter(mock(ResourceInfo.class), serverLogger, () -> null);
+
+    @Test
+    public void problemResponseIsNotCapturedAsEntity() throws Exception {
+        ContainerRequestContext request = mock(ContainerRequestContext.class, RETURNS_DEEP_STUBS);
+        when(request.getProperty(ServerLogFilter.LOG_PARAMS_PROPERTY)).thenReturn(LogParams.defaults);
+        when(request.getMethod()).thenReturn("GET");
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        when(response.getStatus()).thenReturn(500);
+        when(response.hasEntity()).thenReturn(true);
+        when(response.getEntity()).thenReturn(ProblemResponse.builder().status(500).build());
+
+        filter.filter(request, response);
+
+        verify(request, never()).setProperty(eq(ServerLogEntityInterceptor.PENDING_RESPONSE_PROPERTY), any());
+        assertThat(logged).hasSize(1);
+        assertThat(logged.get(0).entity).isNull();
+    }
+
+    @Test
+    public void otherEntitiesAreCapturedWhileWritten() throws Exception {
+        ContainerRequestContext request = mock(ContainerRequestContext.class, RETURNS_DEEP_STUBS);
+        when(request.getProperty(ServerLogFilter.LOG_PARAMS_PROPERTY)).thenReturn(LogParams.defaults);
+        when(request.getMethod()).thenReturn("GET");
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        when(response.getStatus()).thenReturn(200);
+        when(response.hasEntity()).thenReturn(true);
+        when(response.getEntity()).thenReturn("payload");
+
+        filter.filter(request, response);
+
+        verify(request).setProperty(eq(ServerLogEntityInterceptor.PENDING_RESPONSE_PROPERTY), any());
+        assertThat(logged).isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package no.obos.util.servicebuilder.slowrequest;
+
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlowRequestTrackerTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void requestPastThresholdIsSampledWithBackoff() {
+        SlowRequestTracker tracker = new SlowRequestTracker(1_000, false, 100, 5);
+        InFlightRequest request = tracker.begin("Resource.get", "GET /thing", "id-1", 0);
+
+        tracker.check(999 * MILLIS);
+        assertThat(request.getSamples()).isEqualTo(0);
+
+        tracker.check(1_000 * MILLIS);
+        assertThat(request.getSamples()).isEqualTo(1);
+        assertThat(request.getLastStack()).isNotEmpty();
+        assertThat(tracker.slowRequests(1_000 * MILLIS)).containsExactly(request);
+
+        tracker.check(1_500 * MILLIS);
+        assertThat(request.getSamples()).isEqualTo(1);
+
+        tracker.check(2_000 * MILLIS);
+        assertThat(request.getSamples()).isEqualTo(2);
+    }
+
+    @Test
+    public void finishedRequestIsNoLongerTracked() {
+        SlowRequestTracker tracker = new SlowRequestTracker(1_000, false, 100, 5);
+        InFlightRequest request = tracker.begin("Resource.get", "GET /thing", "id-1", 0);
+
+        tracker.end(request, 10 * MILLIS);
+
+        assertThat(tracker.inFlight()).isEmpty();
+    }
+
+    @Test
+    public void adaptiveThresholdFollowsP99OfPreviousWindow() {
+        SlowRequestTracker tracker = new SlowRequestTracker(10_000, true, 100, 5);
+        for (int i = 0; i < SlowRequestTracker.MIN_SAMPLES_FOR_ADAPTIVE; i++) {
+            tracker.end(tracker.begin("Resource.get", "GET /thing", null, 0), 200 * MILLIS);
+        }
+        assertThat(tracker.thresholdMillis("Resource.get")).isEqualTo(10_000);
+
+        tracker.check(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SlowRequestTracker.WINDOW_MILLIS));
+
+        assertThat(tracker.thresholdMillis("Resource.get")).isBetween(400L, 500L);
+        assertThat(tracker.thresholdMillis("Other.get")).isEqualTo(10_000);
+    }
+
+    @Test
+    public void inFlightGaugeIsRegisteredWhileStarted() {
+        SlowRequestTracker tracker = new SlowRequestTracker(1_000, false, 100, 5);
+
+        tracker.start();
+        assertThat(MetricsRegistry.snapshot()).containsKey("slowrequest.inflight");
+
+        tracker.stop();
+        assertThat(MetricsRegistry.snapshot()).doesNotContainKey("slowrequest.inflight");
+    }
+}
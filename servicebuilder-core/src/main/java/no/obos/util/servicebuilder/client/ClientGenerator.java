@@ -3,6 +3,7 @@ package no.obos.util.servicebuilder.client;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.experimental.Wither;
@@ -12,6 +13,8 @@ import no.obos.util.servicebuilder.model.ServiceDefinition;
 import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -29,9 +32,15 @@ public class ClientGenerator {
     public final String clientAppName;
     @Wither(AccessLevel.PRIVATE)
     public final Supplier<String> appTokenSupplier;
+    @Wither(AccessLevel.PRIVATE)
+    public final boolean coalesceGets;
+    @Wither(AccessLevel.PRIVATE)
+    public final ImmutableList<String> coalescingKeyHeaders;
+    @Wither(AccessLevel.PRIVATE)
+    public final LoadBalancer loadBalancer;
 
     public static ClientGenerator defaults(ServiceDefinition serviceDefinition) {
-        return new ClientGenerator(null, serviceDefinition, null, null);
+        return new ClientGenerator(null, serviceDefinition, null, null, false, CoalescingConnectorProvider.DEFAULT_KEY_HEADERS, null);
     }
 
     public Client generate() {
@@ -60,6 +69,18 @@ public class ClientGenerator {
             clientConfig.register(AppTokenClientFilter.class);
         }
 
+        ConnectorProvider connectorProvider = clientConfig.getConnectorProvider() != null
+                ? clientConfig.getConnectorProvider()
+                : new HttpUrlConnectorProvider();
+        if (loadBalancer != null) {
+            connectorProvider = new LoadBalancingConnectorProvider(connectorProvider, loadBalancer);
+        }
+        connectorProvider = new MeteredConnectorProvider(connectorProvider, serviceDefinition.getName());
+        if (coalesceGets) {
+            connectorProvider = new CoalescingConnectorProvider(connectorProvider, coalescingKeyHeaders);
+        }
+        clientConfig.connectorProvider(connectorProvider);
+
         clientConfig.register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -81,4 +102,19 @@ public class ClientGenerator {
     public ClientGenerator appTokenSupplier(Supplier<String> appTokenSupplier) {
         return withAppTokenSupplier(appTokenSupplier);
     }
+
+    public ClientGenerator coalesceGets(boolean coalesceGets) {
+        return withCoalesceGets(coalesceGets);
+    }
+
+    public ClientGenerator coalescingKeyHeaders(List<String> coalescingKeyHeaders) {
+        return withCoalescingKeyHeaders(ImmutableList.copyOf(coalescingKeyHeaders));
+    }
+
+    /**
+     * Fordeler kall på instansene til lastbalansereren. Klienten må genereres mot første instans.
+     */
+    public ClientGenerator loadBalancer(LoadBalancer loadBalancer) {
+        return withLoadBalancer(loadBalancer);
+    }
 }
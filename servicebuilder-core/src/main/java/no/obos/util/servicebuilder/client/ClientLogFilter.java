@@ -18,11 +18,16 @@ public class ClientLogFilter implements ClientRequestFilter, ClientResponseFilte
     @Override
     public void filter(ClientRequestContext requestContext) throws IOException {
         requestContext.setProperty(PROPERTYNAME, System.nanoTime());
-        log.info(getCallSignature(requestContext));
+        if (log.isInfoEnabled()) {
+            log.info(getCallSignature(requestContext));
+        }
     }
 
     @Override
     public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+        if (! log.isInfoEnabled()) {
+            return;
+        }
         Long totalMillis = null;
 
         Long startNanos = (Long) requestContext.getProperty(PROPERTYNAME);
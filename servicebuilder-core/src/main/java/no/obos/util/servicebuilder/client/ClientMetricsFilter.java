@@ -0,0 +1,71 @@
+package no.obos.util.servicebuilder.client;
+
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.model.ServiceDefinition;
+import org.jvnet.hk2.annotations.Optional;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Registrerer responstid og statusklasse for utgående kall i MetricsRegistry, per måltjeneste og operasjon.
+ * Operasjonen er ressursmetoden når kallet går gjennom en stub fra StubGenerator, ellers path med id-er erstattet av {id}.
+ * Navn: client.[tjeneste].[operasjon] (tidsfordeling) og client.[tjeneste].status.[n]xx (teller).
+ */
+@Priority(Priorities.USER)
+public class ClientMetricsFilter implements ClientRequestFilter, ClientResponseFilter {
+    public static final String PROPERTY_START = "ClientMetricsFilter.startTime";
+    public static final String PROPERTY_OPERATION = "ClientMetricsFilter.operation";
+
+    static final ThreadLocal<String> currentOperation = new ThreadLocal<>();
+    private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+    private final String prefix;
+
+    @Inject
+    public ClientMetricsFilter(@Named(ClientGenerator.SERVICE_DEFINITION_INJECTION) @Optional ServiceDefinition serviceDefinition) {
+        this.prefix = "client." + MetricsRegistry.segment(serviceDefinition != null ? serviceDefinition.getName() : null) + ".";
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) throws IOException {
+        String operation = currentOperation.get();
+        if (operation == null) {
+            operation = requestContext.getMethod() + " " + normalizePath(requestContext.getUri().getPath());
+        }
+        requestContext.setProperty(PROPERTY_OPERATION, operation);
+        requestContext.setProperty(PROPERTY_START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+        Long startNanos = (Long) requestContext.getProperty(PROPERTY_START);
+        String operation = (String) requestContext.getProperty(PROPERTY_OPERATION);
+        if (startNanos != null && operation != null) {
+            MetricsRegistry.timer(prefix + MetricsRegistry.segment(operation)).recordNanosSince(startNanos);
+        }
+        MetricsRegistry.counter(prefix + "status." + responseContext.getStatus() / 100 + "xx").inc();
+    }
+
+    static String normalizePath(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            sb.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package no.obos.util.servicebuilder.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import lombok.AllArgsConstructor;
+import no.obos.util.servicebuilder.model.Constants;
+import no.obos.util.servicebuilder.util.SingleFlight;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Pakker inn en connector slik at samtidige, identiske GET-kall deler ett utgående kall.
+ * To kall er identiske når URI og verdiene til nøkkel-headerne er like. Hver kaller får sin egen kopi av responsen.
+ */
+@AllArgsConstructor
+public class CoalescingConnectorProvider implements ConnectorProvider {
+    public static final ImmutableList<String> DEFAULT_KEY_HEADERS = ImmutableList.of(
+            Constants.APPTOKENID_HEADER,
+            Constants.USERTOKENID_HEADER,
+            HttpHeaders.AUTHORIZATION,
+            HttpHeaders.ACCEPT,
+            HttpHeaders.COOKIE
+    );
+
+    final ConnectorProvider delegate;
+    final ImmutableList<String> keyHeaders;
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        return new CoalescingConnector(delegate.getConnector(client, runtimeConfig), keyHeaders);
+    }
+
+
+    static class CoalescingConnector implements Connector {
+        final Connector delegate;
+        final ImmutableList<String> keyHeaders;
+        final SingleFlight<List<String>, BufferedResponse> singleFlight = new SingleFlight<>();
+
+        CoalescingConnector(Connector delegate, ImmutableList<String> keyHeaders) {
+            this.delegate = delegate;
+            this.keyHeaders = keyHeaders;
+        }
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            if (! HttpMethod.GET.equals(request.getMethod()) || request.hasEntity()) {
+                return delegate.apply(request);
+            }
+            boolean[] leader = {false};
+            BufferedResponse buffered;
+            try {
+                buffered = singleFlight.execute(key(request), () -> {
+                    leader[0] = true;
+                    return BufferedResponse.of(delegate.apply(request));
+                });
+            } catch (ProcessingException ex) {
+                if (leader[0]) {
+                    throw ex;
+                }
+                throw new ProcessingException("Coalesced call to " + request.getUri() + " failed", ex);
+            }
+            return buffered.toResponse(request);
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            return delegate.apply(request, callback);
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        List<String> key(ClientRequest request) {
+            List<String> key = new ArrayList<>(keyHeaders.size() + 1);
+            key.add(request.getUri().toString());
+            for (String header : keyHeaders) {
+                String value = request.getHeaderString(header);
+                key.add(value != null ? value : "");
+            }
+            return key;
+        }
+    }
+
+
+    @AllArgsConstructor
+    static class BufferedResponse {
+        final Response.StatusType status;
+        final MultivaluedMap<String, String> headers;
+        final URI resolvedRequestUri;
+        final byte[] entity;
+
+        static BufferedResponse of(ClientResponse response) {
+            byte[] entity = null;
+            if (response.hasEntity()) {
+                try (InputStream entityStream = response.getEntityStream()) {
+                    entity = ByteStreams.toByteArray(entityStream);
+                } catch (IOException ex) {
+                    throw new ProcessingException("Could not buffer response entity", ex);
+                }
+            }
+            MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+            headers.putAll(response.getHeaders());
+            return new BufferedResponse(response.getStatusInfo(), headers, response.getResolvedRequestUri(), entity);
+        }
+
+        ClientResponse toResponse(ClientRequest request) {
+            ClientResponse response = new ClientResponse(status, request);
+            headers.forEach((name, values) -> response.getHeaders().put(name, new ArrayList<>(values)));
+            if (resolvedRequestUri != null) {
+                response.setResolvedRequestUri(resolvedRequestUri);
+            }
+            if (entity != null) {
+                response.setEntityStream(new ByteArrayInputStream(entity));
+            }
+            return response;
+        }
+    }
+}
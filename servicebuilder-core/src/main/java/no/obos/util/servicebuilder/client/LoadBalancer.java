@@ -0,0 +1,175 @@
+package no.obos.util.servicebuilder.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fordeler kall mellom flere instanser av en tjeneste.
+ * <p>
+ * Valg av instans: to tilfeldige friske instanser trekkes, og den med færrest pågående kall velges (power of two choices).
+ * Passiv utkobling: en instans som feiler flere ganger på rad (tilkoblingsfeil eller 502/503/504) tas ut i en periode.
+ * Aktiv sjekk: utkoblede instanser pinges jevnlig og tas inn igjen når de svarer.
+ * Hvis alle instanser er utkoblet fordeles kallene på alle.
+ */
+@Slf4j
+public class LoadBalancer {
+    public static final int DEFAULT_FAILURES_BEFORE_EJECTION = 3;
+    public static final long DEFAULT_EJECTION_MILLIS = 30_000;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 5_000;
+    static final int PROBE_TIMEOUT_MILLIS = 2_000;
+
+    final ImmutableList<Endpoint> endpoints;
+    final int failuresBeforeEjection;
+    final long ejectionMillis;
+    private ScheduledExecutorService prober;
+
+    public LoadBalancer(List<URI> uris, int failuresBeforeEjection, long ejectionMillis) {
+        if (uris.isEmpty()) {
+            throw new IllegalArgumentException("LoadBalancer needs at least one endpoint");
+        }
+        ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+        uris.forEach(uri -> builder.add(new Endpoint(uri)));
+        this.endpoints = builder.build();
+        this.failuresBeforeEjection = failuresBeforeEjection;
+        this.ejectionMillis = ejectionMillis;
+    }
+
+    public LoadBalancer(List<URI> uris) {
+        this(uris, DEFAULT_FAILURES_BEFORE_EJECTION, DEFAULT_EJECTION_MILLIS);
+    }
+
+    public ImmutableList<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Endpoint choose() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint first = pickHealthy(random, now);
+        Endpoint second = pickHealthy(random, now);
+        return second.outstanding.get() < first.outstanding.get() ? second : first;
+    }
+
+    private Endpoint pickHealthy(ThreadLocalRandom random, long now) {
+        int size = endpoints.size();
+        int start = random.nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Endpoint candidate = endpoints.get((start + i) % size);
+            if (candidate.isAvailable(now)) {
+                return candidate;
+            }
+        }
+        return endpoints.get(start);
+    }
+
+    public void reportSuccess(Endpoint endpoint) {
+        if (endpoint.consecutiveFailures.get() != 0) {
+            endpoint.consecutiveFailures.set(0);
+        }
+    }
+
+    public void reportFailure(Endpoint endpoint) {
+        if (endpoint.consecutiveFailures.incrementAndGet() >= failuresBeforeEjection && endpoints.size() > 1) {
+            eject(endpoint);
+        }
+    }
+
+    void eject(Endpoint endpoint) {
+        if (! endpoint.isAvailable(System.currentTimeMillis())) {
+            return;
+        }
+        log.warn("Ejecting endpoint {} for {} ms", endpoint.uri, ejectionMillis);
+        endpoint.ejectedUntil = System.currentTimeMillis() + ejectionMillis;
+    }
+
+    void reinstate(Endpoint endpoint) {
+        if (endpoint.ejectedUntil != 0) {
+            log.info("Reinstating endpoint {}", endpoint.uri);
+        }
+        endpoint.consecutiveFailures.set(0);
+        endpoint.ejectedUntil = 0;
+    }
+
+    /**
+     * Starter jevnlig sjekk av utkoblede instanser. Stoppes med stop().
+     */
+    public synchronized LoadBalancer startProbing(long intervalMillis) {
+        if (prober == null && endpoints.size() > 1) {
+            prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("loadbalancer-probe-%d")
+                    .setDaemon(true)
+                    .build());
+            prober.scheduleWithFixedDelay(this::probeEjected, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    void probeEjected() {
+        long now = System.currentTimeMillis();
+        for (Endpoint endpoint : endpoints) {
+            if (! endpoint.isAvailable(now) && ping(endpoint.uri)) {
+                reinstate(endpoint);
+            }
+        }
+    }
+
+    static boolean ping(URI uri) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) uri.toURL().openConnection();
+            connection.setConnectTimeout(PROBE_TIMEOUT_MILLIS);
+            connection.setReadTimeout(PROBE_TIMEOUT_MILLIS);
+            connection.setRequestMethod("GET");
+            return connection.getResponseCode() < 500;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+
+    public static class Endpoint {
+        public final URI uri;
+        final String uriString;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile long ejectedUntil;
+
+        Endpoint(URI uri) {
+            this.uri = uri;
+            this.uriString = uri.toString();
+        }
+
+        boolean isAvailable(long now) {
+            return ejectedUntil <= now;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+    }
+}
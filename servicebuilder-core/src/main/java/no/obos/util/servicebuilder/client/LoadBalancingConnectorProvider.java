@@ -0,0 +1,90 @@
+package no.obos.util.servicebuilder.client;
+
+import lombok.AllArgsConstructor;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Configuration;
+import java.net.URI;
+import java.util.concurrent.Future;
+
+/**
+ * Sender hvert kall til en instans valgt av LoadBalancer.
+ * Klienter genereres mot første instans, og connectoren bytter ut starten av URI-en med valgt instans.
+ */
+@AllArgsConstructor
+public class LoadBalancingConnectorProvider implements ConnectorProvider {
+    final ConnectorProvider delegate;
+    final LoadBalancer loadBalancer;
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        Connector connector = delegate.getConnector(client, runtimeConfig);
+        String logicalBase = loadBalancer.getEndpoints().get(0).uriString;
+        return new Connector() {
+            @Override
+            public ClientResponse apply(ClientRequest request) {
+                String uri = request.getUri().toString();
+                if (! hasBase(uri, logicalBase)) {
+                    return connector.apply(request);
+                }
+                LoadBalancer.Endpoint endpoint = loadBalancer.choose();
+                if (! endpoint.uriString.equals(logicalBase)) {
+                    request.setUri(URI.create(endpoint.uriString + uri.substring(logicalBase.length())));
+                }
+                endpoint.outstanding.incrementAndGet();
+                try {
+                    ClientResponse response = connector.apply(request);
+                    if (isUnavailable(response.getStatus())) {
+                        loadBalancer.reportFailure(endpoint);
+                    } else {
+                        loadBalancer.reportSuccess(endpoint);
+                    }
+                    return response;
+                } catch (RuntimeException ex) {
+                    loadBalancer.reportFailure(endpoint);
+                    throw ex;
+                } finally {
+                    endpoint.outstanding.decrementAndGet();
+                }
+            }
+
+            @Override
+            public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+                return connector.apply(request, callback);
+            }
+
+            @Override
+            public String getName() {
+                return connector.getName();
+            }
+
+            @Override
+            public void close() {
+                connector.close();
+            }
+        };
+    }
+
+    /**
+     * Om uri starter med base og base slutter på en grense i path, slik at http://host/api ikke treffer http://host/api2.
+     */
+    static boolean hasBase(String uri, String base) {
+        if (! uri.startsWith(base)) {
+            return false;
+        }
+        if (uri.length() == base.length() || base.endsWith("/")) {
+            return true;
+        }
+        char next = uri.charAt(base.length());
+        return next == '/' || next == '?' || next == '#';
+    }
+
+    static boolean isUnavailable(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+}
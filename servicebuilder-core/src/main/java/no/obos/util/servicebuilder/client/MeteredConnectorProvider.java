@@ -0,0 +1,64 @@
+package no.obos.util.servicebuilder.client;
+
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Configuration;
+import java.util.concurrent.Future;
+
+/**
+ * Teller pågående kall og kall som feiler uten respons (tilkobling, timeout o.l.) mot en tjeneste.
+ * Navn: client.[tjeneste].inflight og client.[tjeneste].exceptions.
+ */
+public class MeteredConnectorProvider implements ConnectorProvider {
+    final ConnectorProvider delegate;
+    final Counter inFlight;
+    final Counter exceptions;
+
+    public MeteredConnectorProvider(ConnectorProvider delegate, String targetName) {
+        this.delegate = delegate;
+        String prefix = "client." + MetricsRegistry.segment(targetName) + ".";
+        this.inFlight = MetricsRegistry.counter(prefix + "inflight");
+        this.exceptions = MetricsRegistry.counter(prefix + "exceptions");
+    }
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        Connector connector = delegate.getConnector(client, runtimeConfig);
+        return new Connector() {
+            @Override
+            public ClientResponse apply(ClientRequest request) {
+                inFlight.inc();
+                try {
+                    return connector.apply(request);
+                } catch (RuntimeException ex) {
+                    exceptions.inc();
+                    throw ex;
+                } finally {
+                    inFlight.dec();
+                }
+            }
+
+            @Override
+            public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+                return connector.apply(request, callback);
+            }
+
+            @Override
+            public String getName() {
+                return connector.getName();
+            }
+
+            @Override
+            public void close() {
+                connector.close();
+            }
+        };
+    }
+}
@@ -15,6 +15,9 @@ import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URI;
 
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
@@ -25,6 +28,8 @@ public class StubGenerator {
     @Wither(AccessLevel.PRIVATE)
     final boolean logging;
     @Wither(AccessLevel.PRIVATE)
+    final boolean metrics;
+    @Wither(AccessLevel.PRIVATE)
     final boolean throwExceptionForErrors;
     @Wither(AccessLevel.PRIVATE)
     final String apiPath;
@@ -35,7 +40,7 @@ public class StubGenerator {
 
 
     public static StubGenerator defaults(Client client, URI uri) {
-        return new StubGenerator(client, uri, true, true, "api", ImmutableList.of(), ImmutableMap.of());
+        return new StubGenerator(client, uri, true, true, true, "api", ImmutableList.of(), ImmutableMap.of());
     }
 
     public <T> T generateClient(Class<T> resource) {
@@ -57,8 +62,51 @@ public class StubGenerator {
         if (logging) {
             webTarget.register(ClientLogFilter.class);
         }
+        if (metrics) {
+            webTarget.register(ClientMetricsFilter.class);
+        }
+
+        T stub = WebResourceFactory.newResource(resource, webTarget, false, headerArg, cookies, new Form());
+        return metrics
+                ? withOperationNames(resource, stub)
+                : stub;
+    }
+
+    /**
+     * Pakker inn stub slik at ClientMetricsFilter kan navngi kallet etter ressursmetoden i stedet for path.
+     */
+    private static <T> T withOperationNames(Class<T> resource, T stub) {
+        ImmutableMap.Builder<Method, String> operationNamesBuilder = ImmutableMap.builder();
+        for (Method method : resource.getMethods()) {
+            operationNamesBuilder.put(method, resource.getSimpleName() + "." + method.getName());
+        }
+        ImmutableMap<Method, String> operationNames = operationNamesBuilder.build();
+        Object proxy = Proxy.newProxyInstance(resource.getClassLoader(), new Class<?>[]{resource}, (self, method, args) -> {
+            String operationName = operationNames.get(method);
+            if (operationName == null) {
+                return invoke(stub, method, args);
+            }
+            String previous = ClientMetricsFilter.currentOperation.get();
+            ClientMetricsFilter.currentOperation.set(operationName);
+            try {
+                return invoke(stub, method, args);
+            } finally {
+                if (previous == null) {
+                    ClientMetricsFilter.currentOperation.remove();
+                } else {
+                    ClientMetricsFilter.currentOperation.set(previous);
+                }
+            }
+        });
+        return resource.cast(proxy);
+    }
 
-        return WebResourceFactory.newResource(resource, webTarget, false, headerArg, cookies, new Form());
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
     }
 
     public StubGenerator header(String key, String value) {
@@ -78,6 +126,10 @@ public class StubGenerator {
         return withLogging(logging);
     }
 
+    public StubGenerator metrics(boolean metrics) {
+        return withMetrics(metrics);
+    }
+
     public StubGenerator apiPath(String apiPath) {
         return withApiPath(apiPath);
     }
@@ -23,9 +23,11 @@ public class TargetGenerator {
     final boolean throwExceptionForErrors;
     @Wither(AccessLevel.PRIVATE)
     final boolean logging;
+    @Wither(AccessLevel.PRIVATE)
+    final boolean metrics;
 
     public static TargetGenerator defaults(Client client, URI uri) {
-        return new TargetGenerator(client, uri, ImmutableMap.of(), false, true);
+        return new TargetGenerator(client, uri, ImmutableMap.of(), false, true, true);
     }
 
     public WebTarget generate() {
@@ -50,6 +52,9 @@ public class TargetGenerator {
         if (logging) {
             target.register(ClientLogFilter.class);
         }
+        if (metrics) {
+            target.register(ClientMetricsFilter.class);
+        }
 
         return target;
     }
@@ -65,4 +70,8 @@ public class TargetGenerator {
     public TargetGenerator logging(boolean logging) {
         return withLogging(logging);
     }
+
+    public TargetGenerator metrics(boolean metrics) {
+        return withMetrics(metrics);
+    }
 }
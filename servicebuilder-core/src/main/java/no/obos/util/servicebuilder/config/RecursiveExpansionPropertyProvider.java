@@ -13,6 +13,12 @@ public abstract class RecursiveExpansionPropertyProvider implements PropertyProv
         return getWithExpandedPropertiesRecursor(this, key, new ArrayList<>());
     }
 
+    @Override
+    public boolean has(String key) {
+        String value = getValueUnexpanded(this, key);
+        return value != null && ! value.trim().isEmpty();
+    }
+
     abstract String getNoExpansion(String key);
 
     private String getWithExpandedPropertiesRecursor(RecursiveExpansionPropertyProvider propertyProvider, String key, List<String> alreadyExpanded) {
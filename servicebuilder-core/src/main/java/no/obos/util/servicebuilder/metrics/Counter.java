@@ -0,0 +1,26 @@
+package no.obos.util.servicebuilder.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Teller som kan økes og senkes fra mange tråder uten låsing.
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void inc(long n) {
+        value.add(n);
+    }
+
+    public void dec() {
+        value.decrement();
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
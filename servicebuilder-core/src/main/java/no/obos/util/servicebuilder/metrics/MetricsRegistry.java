@@ -0,0 +1,78 @@
+package no.obos.util.servicebuilder.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Felles register for tellere, målere og tidsfordelinger fra servicebuilder-komponenter.
+ * Registeret er statisk på samme måte som ObosHealthCheckRegistry, og eksponeres av MetricsServlet.
+ * Navn er punktseparerte, f.eks. "client.minservice.MinResource.hent".
+ */
+public class MetricsRegistry {
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    /**
+     * Registrerer (eller erstatter) en måler som leses av ved hver avlesning.
+     */
+    public static void registerGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Fjerner måleren bare dersom den ikke er erstattet av en annen siden den ble registrert.
+     */
+    public static void removeGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    public static SortedMap<String, Object> snapshot() {
+        SortedMap<String, Object> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.get()));
+        timers.forEach((name, timer) -> result.put(name, timer.snapshot()));
+        for (Map.Entry<String, Supplier<? extends Number>> gauge : gauges.entrySet()) {
+            Number value;
+            try {
+                value = gauge.getValue().get();
+            } catch (RuntimeException ex) {
+                value = null;
+            }
+            result.put(gauge.getKey(), value);
+        }
+        return result;
+    }
+
+    /**
+     * Gjør en vilkårlig streng (tjenestenavn, klassenavn, path) om til ett gyldig navnesegment.
+     */
+    public static String segment(String value) {
+        if (value == null || value.isEmpty()) {
+            return "unknown";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '{' || c == '}' || c == '/' ? c : '_');
+        }
+        return sb.toString();
+    }
+}
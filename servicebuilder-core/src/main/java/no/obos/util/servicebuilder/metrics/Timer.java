@@ -0,0 +1,91 @@
+package no.obos.util.servicebuilder.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fordeling av varigheter. Målinger legges i eksponentielt voksende bøtter (ca 20% oppløsning fra 10 mikrosekunder
+ * til to minutter), slik at registrering er lås- og allokeringsfri og persentiler kan beregnes ved avlesning.
+ */
+public class Timer {
+    static final long[] BUCKET_BOUNDS_MICROS = bucketBounds();
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = unit.toMicros(duration);
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public void recordNanosSince(long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Øvre grense for bøtta som inneholder gitt persentil (0-100), i millisekunder.
+     */
+    public double percentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long upper = i < BUCKET_BOUNDS_MICROS.length ? BUCKET_BOUNDS_MICROS[i] : Long.MAX_VALUE;
+                return Math.min(upper, maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMicros.get() / 1000.0;
+    }
+
+    public Map<String, Object> snapshot() {
+        long n = count.sum();
+        return ImmutableMap.<String, Object>builder()
+                .put("count", n)
+                .put("meanMillis", n == 0 ? 0.0 : totalMicros.sum() / 1000.0 / n)
+                .put("maxMillis", maxMicros.get() / 1000.0)
+                .put("p50Millis", percentileMillis(50))
+                .put("p95Millis", percentileMillis(95))
+                .put("p99Millis", percentileMillis(99))
+                .build();
+    }
+
+    static int bucketIndex(long micros) {
+        int index = Arrays.binarySearch(BUCKET_BOUNDS_MICROS, micros);
+        return index >= 0 ? index : - index - 1;
+    }
+
+    private static long[] bucketBounds() {
+        long[] bounds = new long[90];
+        double bound = 10;
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = (long) bound;
+            bound = Math.max(bound * 1.2, bounds[i] + 1);
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,89 @@
+package no.obos.util.servicebuilder.client;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CoalescingConnectorProviderTest {
+
+    @Test
+    public void concurrentIdenticalGetsShareOneUpstreamCall() throws Exception {
+        CountingConnector upstream = new CountingConnector();
+        Client client = ClientBuilder.newClient(new ClientConfig()
+                .connectorProvider(new CoalescingConnectorProvider((c, config) -> upstream, CoalescingConnectorProvider.DEFAULT_KEY_HEADERS)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(executor.submit(() -> client.target("http://upstream/ting").request().get(String.class)));
+            }
+            while (upstream.calls.get() == 0) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(50);
+            upstream.release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("svar");
+            }
+            assertThat(upstream.calls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+
+    static class CountingConnector implements Connector {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ClientResponse response = new ClientResponse(Response.Status.OK, request);
+            response.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+            response.setEntityStream(new ByteArrayInputStream("svar".getBytes(StandardCharsets.UTF_8)));
+            return response;
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
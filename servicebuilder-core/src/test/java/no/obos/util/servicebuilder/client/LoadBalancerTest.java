@@ -0,0 +1,74 @@
+package no.obos.util.servicebuilder.client;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadBalancerTest {
+    private static final URI A = URI.create("http://a:8080/s1.0");
+    private static final URI B = URI.create("http://b:8080/s1.0");
+
+    @Test
+    public void choosesEndpointWithFewestOutstandingCalls() {
+        LoadBalancer loadBalancer = new LoadBalancer(ImmutableList.of(A, B));
+        loadBalancer.getEndpoints().get(0).outstanding.set(10);
+
+        int chosenB = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (loadBalancer.choose().uri.equals(B)) {
+                chosenB++;
+            }
+        }
+        // A velges bare når begge trekk lander på A, dvs. i omtrent en fjerdedel av tilfellene
+        assertThat(chosenB).isGreaterThan(650);
+    }
+
+    @Test
+    public void ejectsAfterConsecutiveFailures() {
+        LoadBalancer loadBalancer = new LoadBalancer(ImmutableList.of(A, B), 2, 60_000);
+        LoadBalancer.Endpoint a = loadBalancer.getEndpoints().get(0);
+
+        loadBalancer.reportFailure(a);
+        loadBalancer.reportSuccess(a);
+        loadBalancer.reportFailure(a);
+        assertThat(a.isAvailable(System.currentTimeMillis())).isTrue();
+
+        loadBalancer.reportFailure(a);
+        assertThat(a.isAvailable(System.currentTimeMillis())).isFalse();
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose().uri).isEqualTo(B);
+        }
+    }
+
+    @Test
+    public void usesAllEndpointsWhenAllAreEjected() {
+        LoadBalancer loadBalancer = new LoadBalancer(ImmutableList.of(A, B), 1, 60_000);
+        loadBalancer.getEndpoints().forEach(loadBalancer::reportFailure);
+
+        assertThat(loadBalancer.choose()).isNotNull();
+    }
+
+    @Test
+    public void reinstateMakesEndpointAvailable() {
+        LoadBalancer loadBalancer = new LoadBalancer(ImmutableList.of(A, B), 1, 60_000);
+        LoadBalancer.Endpoint a = loadBalancer.getEndpoints().get(0);
+        loadBalancer.reportFailure(a);
+
+        loadBalancer.reinstate(a);
+
+        assertThat(a.isAvailable(System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    public void baseMatchesOnlyWholePathSegments() {
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:8080/s1.0", "http://a:8080/s1.0")).isTrue();
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:8080/s1.0/ting?x=1", "http://a:8080/s1.0")).isTrue();
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:8080/s1.0?x=1", "http://a:8080/s1.0")).isTrue();
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:8080/s1.0/ting", "http://a:8080/s1.0/")).isTrue();
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:8080/s1.01/ting", "http://a:8080/s1.0")).isFalse();
+        assertThat(LoadBalancingConnectorProvider.hasBase("http://a:80801/s1.0", "http://a:8080")).isFalse();
+    }
+}
@@ -0,0 +1,40 @@
+package no.obos.util.servicebuilder.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TimerTest {
+
+    @Test
+    public void emptyTimerReportsZero() {
+        Timer timer = new Timer();
+
+        assertThat(timer.getCount()).isEqualTo(0);
+        assertThat(timer.percentileMillis(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        Timer timer = new Timer();
+        for (int i = 1; i <= 100; i++) {
+            timer.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(timer.getCount()).isEqualTo(100);
+        assertThat(timer.percentileMillis(50)).isCloseTo(50, within(12.0));
+        assertThat(timer.percentileMillis(99)).isCloseTo(99, within(20.0));
+        assertThat(timer.percentileMillis(100)).isEqualTo(100);
+    }
+
+    @Test
+    public void bucketBoundsAreIncreasing() {
+        for (int i = 1; i < Timer.BUCKET_BOUNDS_MICROS.length; i++) {
+            assertThat(Timer.BUCKET_BOUNDS_MICROS[i]).isGreaterThan(Timer.BUCKET_BOUNDS_MICROS[i - 1]);
+        }
+        assertThat(Timer.bucketIndex(Long.MAX_VALUE)).isEqualTo(Timer.BUCKET_BOUNDS_MICROS.length);
+    }
+}
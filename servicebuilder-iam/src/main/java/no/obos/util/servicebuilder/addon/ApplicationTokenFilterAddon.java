@@ -7,14 +7,15 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.experimental.Wither;
 import lombok.extern.slf4j.Slf4j;
-import no.obos.iam.tokenservice.TokenServiceClient;
 import no.obos.util.config.AppConfigException;
 import no.obos.util.servicebuilder.JerseyConfig;
 import no.obos.util.servicebuilder.ServiceConfig;
 import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
+import no.obos.util.servicebuilder.applicationtoken.ApplicationTokenCache;
 import no.obos.util.servicebuilder.applicationtoken.ApplicationTokenFilter;
 import no.obos.util.servicebuilder.applicationtoken.NumericAppIdApplicationTokenAccessValidator;
 import no.obos.util.servicebuilder.applicationtoken.SwaggerImplicitAppTokenHeader;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorizationFeature;
 import no.obos.util.servicebuilder.exception.DependenceException;
 import no.obos.util.servicebuilder.model.Addon;
 import no.obos.util.servicebuilder.model.PropertyProvider;
@@ -100,7 +101,12 @@ public class ApplicationTokenFilterAddon implements Addon {
 
     @Override
     public void addToJerseyConfig(JerseyConfig jerseyConfig) {
-        jerseyConfig.addRegistations(registrator -> registrator.register(ApplicationTokenFilter.class));
+        jerseyConfig.addRegistations(registrator -> {
+            registrator.register(ApplicationTokenFilter.class);
+            if (! registrator.isRegistered(ResourceAuthorizationFeature.class)) {
+                registrator.register(ResourceAuthorizationFeature.class);
+            }
+        });
         jerseyConfig.addBinder(binder -> {
             binder.bindFactory(ApplicationTokenAccessValidatorFactory.class).to(NumericAppIdApplicationTokenAccessValidator.class);
             binder.bind(this).to(ApplicationTokenFilterAddon.class);
@@ -114,12 +120,12 @@ public class ApplicationTokenFilterAddon implements Addon {
     @AllArgsConstructor(onConstructor = @__({@Inject}))
     private static class ApplicationTokenAccessValidatorFactory implements Factory<NumericAppIdApplicationTokenAccessValidator> {
 
-        final TokenServiceClient tokenServiceClient;
+        final ApplicationTokenCache applicationTokenCache;
         final ApplicationTokenFilterAddon configuration;
 
         @Override
         public NumericAppIdApplicationTokenAccessValidator provide() {
-            return new NumericAppIdApplicationTokenAccessValidator(tokenServiceClient, configuration.acceptedAppIds);
+            return new NumericAppIdApplicationTokenAccessValidator(applicationTokenCache, configuration.acceptedAppIds);
         }
 
         @Override
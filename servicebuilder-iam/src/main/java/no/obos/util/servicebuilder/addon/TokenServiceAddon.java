@@ -10,11 +10,18 @@ import no.obos.metrics.ObosHealthCheckRegistry;
 import no.obos.util.servicebuilder.JerseyConfig;
 import no.obos.util.servicebuilder.JettyServer;
 import no.obos.util.servicebuilder.ServiceConfig;
+import no.obos.util.servicebuilder.applicationtoken.ApplicationTokenCache;
+import no.obos.util.servicebuilder.applicationtoken.ApplicationTokenHolder;
 import no.obos.util.servicebuilder.interfaces.ApplicationTokenIdAddon;
 import no.obos.util.servicebuilder.model.Addon;
 import no.obos.util.servicebuilder.model.PropertyProvider;
+import no.obos.util.servicebuilder.tokenservice.HttpVerificationKeyProvider;
+import no.obos.util.servicebuilder.tokenservice.SignedTokenVerifier;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceLookup;
+import no.obos.util.servicebuilder.tokenservice.VerificationKeyProvider;
 
 import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
@@ -26,6 +33,27 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
     public static final String CONFIG_KEY_TOKENSERVICE_URL = "tokenservice.url";
     public static final String CONFIG_KEY_APP_ID = "tokenservice.app.id";
     public static final String CONFIG_KEY_APP_SECRET = "tokenservice.app.secret";
+    /**
+     * Hvor ofte egen apptoken fornyes i bakgrunnen. Valgfri.
+     */
+    public static final String CONFIG_KEY_APPTOKEN_REFRESH_SECONDS = "tokenservice.apptoken.refresh.seconds";
+    /**
+     * Hvor lenge validerte apptokens fra andre applikasjoner mellomlagres. Valgfri.
+     */
+    public static final String CONFIG_KEY_APPTOKEN_CACHE_TTL_SECONDS = "tokenservice.apptoken.cache.ttl.seconds";
+    public static final String CONFIG_KEY_APPTOKEN_CACHE_SIZE = "tokenservice.apptoken.cache.size";
+    /**
+     * Hvor lenge etter ttl et validert apptoken fortsatt godtas mens det revalideres, f.eks. når TokenService er nede. Valgfri.
+     */
+    public static final String CONFIG_KEY_APPTOKEN_CACHE_GRACE_SECONDS = "tokenservice.apptoken.cache.grace.seconds";
+    /**
+     * Tidsfrist for oppslag av apptokens og brukertokens. 0 slår av tidsavbrudd. Valgfri.
+     */
+    public static final String CONFIG_KEY_LOOKUP_TIMEOUT_MILLIS = "tokenservice.lookup.timeout.millis";
+    /**
+     * Slår på lokal verifisering av signerte apptokens, med nøkler hentet fra denne adressen. Valgfri.
+     */
+    public static final String CONFIG_KEY_OFFLINE_KEYS_URL = "tokenservice.offline.keys.url";
 
     @Wither(AccessLevel.PRIVATE)
     public final String url;
@@ -36,9 +64,26 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
     @Wither(AccessLevel.PRIVATE)
     public final TokenServiceClient tokenServiceClient;
     @Wither(AccessLevel.PRIVATE)
+    public final long apptokenRefreshIntervalMillis;
+    @Wither(AccessLevel.PRIVATE)
+    public final long apptokenCacheTtlMillis;
+    @Wither(AccessLevel.PRIVATE)
+    public final long apptokenCacheSize;
+    @Wither(AccessLevel.PRIVATE)
+    public final long apptokenCacheGraceMillis;
+    @Wither(AccessLevel.PRIVATE)
+    public final long lookupTimeoutMillis;
+    @Wither(AccessLevel.PRIVATE)
+    public final VerificationKeyProvider verificationKeyProvider;
+    @Wither(AccessLevel.PRIVATE)
     public final Runtime runtime;
 
-    public static TokenServiceAddon defaults = new TokenServiceAddon(null, null, null, null, null);
+    public static TokenServiceAddon defaults = new TokenServiceAddon(null, null, null, null,
+            ApplicationTokenHolder.DEFAULT_REFRESH_INTERVAL_MILLIS,
+            ApplicationTokenCache.DEFAULT_TTL_MILLIS, ApplicationTokenCache.DEFAULT_MAX_SIZE, ApplicationTokenCache.DEFAULT_GRACE_MILLIS,
+            TokenServiceLookup.DEFAULT_TIMEOUT_MILLIS,
+            null,
+            null);
 
     @Inject
     public Addon initialize(ServiceConfig serviceConfig) {
@@ -46,15 +91,53 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
                 this.tokenServiceClient == null
                         ? new TokenServiceHttpClient(new WebClientImpl(url), appId, appSecret)
                         : this.tokenServiceClient;
+        ApplicationTokenHolder applicationTokenHolder = new ApplicationTokenHolder(
+                () -> tokenServiceClient.getApplicationToken().getApplicationTokenId(),
+                apptokenRefreshIntervalMillis
+        );
+        SignedTokenVerifier signedTokenVerifier = null;
+        if (verificationKeyProvider != null) {
+            signedTokenVerifier = new SignedTokenVerifier(verificationKeyProvider, SignedTokenVerifier.DEFAULT_KEY_REFRESH_INTERVAL_MILLIS);
+            signedTokenVerifier.start();
+        }
+        TokenServiceLookup tokenServiceLookup = new TokenServiceLookup(tokenServiceClient, lookupTimeoutMillis, signedTokenVerifier);
+        ApplicationTokenCache applicationTokenCache = new ApplicationTokenCache(tokenServiceLookup, apptokenCacheTtlMillis, apptokenCacheGraceMillis, apptokenCacheSize);
+        tokenServiceLookup.registerGauges();
+        applicationTokenCache.registerGauges();
         return this
                 .withRuntime(new Runtime(
-                        tokenServiceClient
+                        tokenServiceClient,
+                        tokenServiceLookup,
+                        applicationTokenHolder,
+                        applicationTokenCache
                 ));
     }
 
     public Addon withProperties(PropertyProvider properties) {
         properties.failIfNotPresent(CONFIG_KEY_TOKENSERVICE_URL, CONFIG_KEY_APP_ID, CONFIG_KEY_APP_SECRET);
-        return this
+        long refreshSeconds = Long.parseLong(properties.get(
+                CONFIG_KEY_APPTOKEN_REFRESH_SECONDS,
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(apptokenRefreshIntervalMillis))
+        ));
+        long cacheTtlSeconds = Long.parseLong(properties.get(
+                CONFIG_KEY_APPTOKEN_CACHE_TTL_SECONDS,
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(apptokenCacheTtlMillis))
+        ));
+        long cacheSize = Long.parseLong(properties.get(CONFIG_KEY_APPTOKEN_CACHE_SIZE, String.valueOf(apptokenCacheSize)));
+        long cacheGraceSeconds = Long.parseLong(properties.get(
+                CONFIG_KEY_APPTOKEN_CACHE_GRACE_SECONDS,
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(apptokenCacheGraceMillis))
+        ));
+        long timeoutMillis = Long.parseLong(properties.get(CONFIG_KEY_LOOKUP_TIMEOUT_MILLIS, String.valueOf(lookupTimeoutMillis)));
+        TokenServiceAddon withOfflineVerification = properties.has(CONFIG_KEY_OFFLINE_KEYS_URL)
+                ? this.offlineVerification(new HttpVerificationKeyProvider(properties.get(CONFIG_KEY_OFFLINE_KEYS_URL)))
+                : this;
+        return withOfflineVerification
+                .lookupTimeoutMillis(timeoutMillis)
+                .apptokenRefreshIntervalMillis(TimeUnit.SECONDS.toMillis(refreshSeconds))
+                .apptokenCacheTtlMillis(TimeUnit.SECONDS.toMillis(cacheTtlSeconds))
+                .apptokenCacheSize(cacheSize)
+                .apptokenCacheGraceMillis(TimeUnit.SECONDS.toMillis(cacheGraceSeconds))
                 .url(properties.get(CONFIG_KEY_TOKENSERVICE_URL))
                 .appId(properties.get(CONFIG_KEY_APP_ID))
                 .appSecret(properties.get(CONFIG_KEY_APP_SECRET));
@@ -62,7 +145,11 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
 
     @Override
     public void addToJerseyConfig(JerseyConfig jerseyConfig) {
-        jerseyConfig.addBinder(binder -> binder.bind(runtime.tokenServiceClient).to(TokenServiceClient.class));
+        jerseyConfig.addBinder(binder -> {
+            binder.bind(runtime.tokenServiceClient).to(TokenServiceClient.class);
+            binder.bind(runtime.tokenServiceLookup).to(TokenServiceLookup.class);
+            binder.bind(runtime.applicationTokenCache).to(ApplicationTokenCache.class);
+        });
     }
 
     @Override
@@ -70,9 +157,18 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
         ObosHealthCheckRegistry.registerPingCheck("Tokenservice: " + url, url);
     }
 
+    @Override
+    public void cleanUp() {
+        if (runtime != null) {
+            runtime.applicationTokenHolder.stop();
+            runtime.tokenServiceLookup.stop();
+            runtime.applicationTokenCache.stop();
+        }
+    }
+
     @Override
     public Supplier<String> getApptokenIdSupplier() {
-        return () -> runtime.tokenServiceClient.getApplicationToken().getApplicationTokenId();
+        return () -> runtime.applicationTokenHolder.get();
     }
 
     public TokenServiceAddon url(String url) {
@@ -91,8 +187,38 @@ public class TokenServiceAddon implements ApplicationTokenIdAddon, Addon {
         return withTokenServiceClient(tokenServiceClient);
     }
 
+    public TokenServiceAddon apptokenRefreshIntervalMillis(long apptokenRefreshIntervalMillis) {
+        return withApptokenRefreshIntervalMillis(apptokenRefreshIntervalMillis);
+    }
+
+    public TokenServiceAddon apptokenCacheTtlMillis(long apptokenCacheTtlMillis) {
+        return withApptokenCacheTtlMillis(apptokenCacheTtlMillis);
+    }
+
+    public TokenServiceAddon apptokenCacheSize(long apptokenCacheSize) {
+        return withApptokenCacheSize(apptokenCacheSize);
+    }
+
+    public TokenServiceAddon apptokenCacheGraceMillis(long apptokenCacheGraceMillis) {
+        return withApptokenCacheGraceMillis(apptokenCacheGraceMillis);
+    }
+
+    public TokenServiceAddon lookupTimeoutMillis(long lookupTimeoutMillis) {
+        return withLookupTimeoutMillis(lookupTimeoutMillis);
+    }
+
+    /**
+     * Verifiserer signerte apptokens lokalt med nøkler fra verificationKeyProvider. Andre tokens slås fortsatt opp i TokenService.
+     */
+    public TokenServiceAddon offlineVerification(VerificationKeyProvider verificationKeyProvider) {
+        return withVerificationKeyProvider(verificationKeyProvider);
+    }
+
     @AllArgsConstructor
     public static class Runtime {
         public final TokenServiceClient tokenServiceClient;
+        public final TokenServiceLookup tokenServiceLookup;
+        public final ApplicationTokenHolder applicationTokenHolder;
+        public final ApplicationTokenCache applicationTokenCache;
     }
 }
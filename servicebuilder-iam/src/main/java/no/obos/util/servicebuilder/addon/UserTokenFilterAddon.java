@@ -10,19 +10,24 @@ import lombok.experimental.Wither;
 import no.obos.iam.tokenservice.UserToken;
 import no.obos.util.servicebuilder.JerseyConfig;
 import no.obos.util.servicebuilder.ServiceConfig;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorizationFeature;
+import no.obos.util.servicebuilder.authorization.RoleOrdinals;
 import no.obos.util.servicebuilder.exception.DependenceException;
 import no.obos.util.servicebuilder.model.Addon;
+import no.obos.util.servicebuilder.model.PropertyProvider;
 import no.obos.util.servicebuilder.model.UibBruker;
 import no.obos.util.servicebuilder.model.UibRolle;
 import no.obos.util.servicebuilder.usertoken.SwaggerImplicitUserTokenHeader;
 import no.obos.util.servicebuilder.usertoken.UibBrukerInjectionFactory;
 import no.obos.util.servicebuilder.usertoken.UserTokenBlockingFilter;
+import no.obos.util.servicebuilder.usertoken.UserTokenCache;
 import no.obos.util.servicebuilder.usertoken.UserTokenFilter;
 import no.obos.util.servicebuilder.util.GuavaHelper;
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
 
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -39,6 +44,13 @@ import java.util.function.Predicate;
  */
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class UserTokenFilterAddon implements Addon {
+    /**
+     * Hvor lenge en brukertoken og tilgangene beregnet fra den mellomlagres. 0, som er standard, slår av mellomlagring.
+     * Oppføringene utløper ikke sammen med tokenet, så verdien må være godt under tokenenes levetid. Valgfri.
+     */
+    public static final String CONFIG_KEY_USERTOKEN_CACHE_TTL_SECONDS = "usertoken.cache.ttl.seconds";
+    public static final String CONFIG_KEY_USERTOKEN_CACHE_SIZE = "usertoken.cache.size";
+
     @Wither(AccessLevel.PRIVATE)
     public final boolean requireUserTokenByDefault;
 
@@ -54,7 +66,29 @@ public class UserTokenFilterAddon implements Addon {
     @Wither(AccessLevel.PRIVATE)
     public final ImmutableMap<String, Predicate<UibRolle>> rolleGirTilgang;
 
-    public static UserTokenFilterAddon defaults = new UserTokenFilterAddon(true, true, it -> Lists.newArrayList(), it -> Lists.newArrayList(), ImmutableMap.of());
+    @Wither(AccessLevel.PRIVATE)
+    public final long userTokenCacheTtlMillis;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final long userTokenCacheSize;
+
+    @Wither(AccessLevel.PRIVATE)
+    public final Runtime runtime;
+
+    public static UserTokenFilterAddon defaults = new UserTokenFilterAddon(true, true, it -> Lists.newArrayList(), it -> Lists.newArrayList(), ImmutableMap.of(),
+            UserTokenCache.DEFAULT_TTL_MILLIS, UserTokenCache.DEFAULT_MAX_SIZE, null);
+
+    @Override
+    public Addon withProperties(PropertyProvider properties) {
+        long ttlSeconds = Long.parseLong(properties.get(
+                CONFIG_KEY_USERTOKEN_CACHE_TTL_SECONDS,
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(userTokenCacheTtlMillis))
+        ));
+        long cacheSize = Long.parseLong(properties.get(CONFIG_KEY_USERTOKEN_CACHE_SIZE, String.valueOf(userTokenCacheSize)));
+        return this
+                .userTokenCacheTtlMillis(TimeUnit.SECONDS.toMillis(ttlSeconds))
+                .userTokenCacheSize(cacheSize);
+    }
 
     @Override
     public Addon initialize(ServiceConfig serviceConfig) {
@@ -64,7 +98,14 @@ public class UserTokenFilterAddon implements Addon {
         if (! serviceConfig.isAddonPresent(TokenServiceAddon.class)) {
             throw new DependenceException(this.getClass(), TokenServiceAddon.class);
         }
-        return this;
+        RoleOrdinals.register(rolleGirTilgang.keySet());
+        UserTokenCache userTokenCache = userTokenCacheTtlMillis > 0
+                ? new UserTokenCache(userTokenCacheTtlMillis, userTokenCacheSize)
+                : null;
+        if (userTokenCache != null) {
+            userTokenCache.registerGauges();
+        }
+        return withRuntime(new Runtime(userTokenCache));
     }
 
     @Override
@@ -72,13 +113,20 @@ public class UserTokenFilterAddon implements Addon {
         jerseyConfig.addBinder(binder -> {
                     binder.bind(this).to(UserTokenFilterAddon.class);
                     binder.bindFactory(UibBrukerInjectionFactory.class).to(UibBruker.class);
+                    if (runtime.userTokenCache != null) {
+                        binder.bind(runtime.userTokenCache).to(UserTokenCache.class);
+                    }
                 }
         );
-        jerseyConfig.addRegistations(registrator -> registrator
-                .register(RolesAllowedDynamicFeature.class)
-                .register(UserTokenFilter.class)
-                .register(UserTokenBlockingFilter.class)
-        );
+        jerseyConfig.addRegistations(registrator -> {
+            registrator
+                    .register(RolesAllowedDynamicFeature.class)
+                    .register(UserTokenFilter.class)
+                    .register(UserTokenBlockingFilter.class);
+            if (! registrator.isRegistered(ResourceAuthorizationFeature.class)) {
+                registrator.register(ResourceAuthorizationFeature.class);
+            }
+        });
 
         if (swaggerImplicitHeaders) {
             SwaggerExtensions.getExtensions().add(new SwaggerImplicitUserTokenHeader(requireUserTokenByDefault));
@@ -111,4 +159,33 @@ public class UserTokenFilterAddon implements Addon {
         return withUibBrukerTilganger(uibBrukerTilganger);
     }
 
+    public UserTokenFilterAddon userTokenCacheTtlMillis(long userTokenCacheTtlMillis) {
+        return withUserTokenCacheTtlMillis(userTokenCacheTtlMillis);
+    }
+
+    public UserTokenFilterAddon userTokenCacheSize(long userTokenCacheSize) {
+        return withUserTokenCacheSize(userTokenCacheSize);
+    }
+
+    @Override
+    public void cleanUp() {
+        if (runtime != null && runtime.userTokenCache != null) {
+            runtime.userTokenCache.stop();
+        }
+    }
+
+    /**
+     * Fjerner brukertoken fra mellomlager, f.eks. ved utlogging.
+     */
+    public void evictUserToken(String usertokenId) {
+        if (runtime != null && runtime.userTokenCache != null) {
+            runtime.userTokenCache.invalidate(usertokenId);
+        }
+    }
+
+    @AllArgsConstructor
+    public static class Runtime {
+        public final UserTokenCache userTokenCache;
+    }
+
 }
@@ -0,0 +1,238 @@
+package no.obos.util.servicebuilder.applicationtoken;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.obos.iam.tokenservice.ApplicationToken;
+import no.obos.iam.tokenservice.TokenServiceClient;
+import no.obos.iam.tokenservice.TokenServiceClientException;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceLookup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Mellomlager for oppslag av apptokens i TokenService, slik at samme token ikke valideres på nytt for hvert kall.
+ * <p>
+ * Gyldige tokens lagres i ttl, ugyldige (INVALID_APPLICATION_TOKEN_ID) i en kortere periode. Andre feil lagres ikke.
+ * Etter ttl, innenfor graceMillis, gis det gamle tokenet fortsatt ut mens det valideres på nytt i bakgrunnen
+ * (stale-while-revalidate). Slik merkes ikke treg eller nede TokenService for tokens som nylig er validert.
+ * Treff og bom telles i metrics under tokenservice.apptoken.cache, og utlevering av tokens som ikke har latt seg
+ * revalidere telles i tokenservice.apptoken.cache.degraded.
+ */
+@Slf4j
+public class ApplicationTokenCache {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_MAX_SIZE = 10_000;
+    static final long MAX_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    static final int REVALIDATION_QUEUE_SIZE = 1_000;
+    static final long REVALIDATION_WARN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TokenServiceLookup tokenServiceLookup;
+    private final long ttlMillis;
+    private final Cache<String, Entry> tokens;
+    private final Cache<String, TokenServiceClientException> invalidTokens;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextRevalidationWarnMillis = new AtomicLong();
+    private final ExecutorService revalidator;
+    private final Counter hits = MetricsRegistry.counter("tokenservice.apptoken.cache.hits");
+    private final Counter negativeHits = MetricsRegistry.counter("tokenservice.apptoken.cache.negativehits");
+    private final Counter misses = MetricsRegistry.counter("tokenservice.apptoken.cache.misses");
+    private final Counter staleHits = MetricsRegistry.counter("tokenservice.apptoken.cache.stale");
+    private final Counter degraded = MetricsRegistry.counter("tokenservice.apptoken.cache.degraded");
+    private final Counter revalidationFailures = MetricsRegistry.counter("tokenservice.apptoken.cache.revalidation.failures");
+    private final Supplier<Number> sizeGauge = () -> tokens.size();
+
+    public ApplicationTokenCache(TokenServiceLookup tokenServiceLookup, long ttlMillis, long graceMillis, long maxSize) {
+        this.tokenServiceLookup = tokenServiceLookup;
+        this.ttlMillis = ttlMillis;
+        this.tokens = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis + graceMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .build();
+        this.invalidTokens = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.min(ttlMillis, MAX_NEGATIVE_TTL_MILLIS), TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .build();
+        this.revalidator = graceMillis > 0 ? createRevalidator() : null;
+    }
+
+    public ApplicationTokenCache(TokenServiceLookup tokenServiceLookup, long ttlMillis, long maxSize) {
+        this(tokenServiceLookup, ttlMillis, 0, maxSize);
+    }
+
+    public ApplicationTokenCache(TokenServiceClient tokenServiceClient, long ttlMillis, long maxSize) {
+        this(TokenServiceLookup.direct(tokenServiceClient), ttlMillis, maxSize);
+    }
+
+    public ApplicationTokenCache(TokenServiceClient tokenServiceClient) {
+        this(tokenServiceClient, DEFAULT_TTL_MILLIS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Uten mellomlagring, for bruk der klienten gis direkte.
+     */
+    public static ApplicationTokenCache uncached(TokenServiceClient tokenServiceClient) {
+        return new ApplicationTokenCache(tokenServiceClient, 0, 0);
+    }
+
+    /**
+     * Samme kontrakt som TokenServiceClient.getApptokenById: kaster TokenServiceClientException ved ugyldig token.
+     */
+    public ApplicationToken getApptokenById(String apptokenId) {
+        // Uten ttl er dette bare en videresending, og skal ikke telles med i tjenestens cache-metrics
+        if (ttlMillis <= 0 || tokenServiceLookup.verifiesLocally(apptokenId)) {
+            return tokenServiceLookup.getApptokenById(apptokenId);
+        }
+        Entry cached = tokens.getIfPresent(apptokenId);
+        if (cached != null) {
+            if (System.currentTimeMillis() - cached.validatedAtMillis < ttlMillis) {
+                hits.inc();
+            } else {
+                staleHits.inc();
+                if (cached.revalidationFailed) {
+                    degraded.inc();
+                }
+                revalidateInBackground(apptokenId, cached);
+            }
+            return cached.token;
+        }
+        TokenServiceClientException invalid = invalidTokens.getIfPresent(apptokenId);
+        if (invalid != null) {
+            negativeHits.inc();
+            throw copyOf(invalid);
+        }
+        misses.inc();
+        return lookup(apptokenId);
+    }
+
+    public void invalidate(String apptokenId) {
+        tokens.invalidate(apptokenId);
+        invalidTokens.invalidate(apptokenId);
+    }
+
+    /**
+     * Registrerer størrelsen som tokenservice.apptoken.cache.size. Gjøres av TokenServiceAddon for tjenestens egen
+     * cache, slik at andre instanser (f.eks. uncached) ikke erstatter måleren.
+     */
+    public void registerGauges() {
+        MetricsRegistry.registerGauge("tokenservice.apptoken.cache.size", sizeGauge);
+    }
+
+    public void stop() {
+        if (revalidator != null) {
+            revalidator.shutdownNow();
+        }
+        MetricsRegistry.removeGauge("tokenservice.apptoken.cache.size", sizeGauge);
+    }
+
+    private ApplicationToken lookup(String apptokenId) {
+        ApplicationToken token;
+        try {
+            token = tokenServiceLookup.getApptokenById(apptokenId);
+        } catch (TokenServiceClientException e) {
+            if (e.getIssue() == TokenServiceClientException.Issue.INVALID_APPLICATION_TOKEN_ID) {
+                tokens.invalidate(apptokenId);
+                invalidTokens.put(apptokenId, e);
+            }
+            throw e;
+        }
+        if (token != null) {
+            tokens.put(apptokenId, new Entry(token, System.currentTimeMillis(), false));
+        }
+        return token;
+    }
+
+    private void revalidateInBackground(String apptokenId, Entry stale) {
+        if (revalidator == null || ! revalidating.add(apptokenId)) {
+            return;
+        }
+        try {
+            revalidator.execute(() -> {
+                try {
+                    lookup(apptokenId);
+                } catch (TokenServiceClientException e) {
+                    if (e.getIssue() != TokenServiceClientException.Issue.INVALID_APPLICATION_TOKEN_ID) {
+                        markRevalidationFailed(apptokenId, stale, e);
+                    }
+                } catch (RuntimeException e) {
+                    markRevalidationFailed(apptokenId, stale, e);
+                } finally {
+                    revalidating.remove(apptokenId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(apptokenId);
+        }
+    }
+
+    /**
+     * Når TokenService er nede feiler revalideringen for alle tokens samtidig. Alle feil telles i
+     * tokenservice.apptoken.cache.revalidation.failures, men det logges høyst én warn per REVALIDATION_WARN_INTERVAL_MILLIS.
+     */
+    private void markRevalidationFailed(String apptokenId, Entry stale, RuntimeException e) {
+        revalidationFailures.inc();
+        long now = System.currentTimeMillis();
+        long next = nextRevalidationWarnMillis.get();
+        if (now >= next && nextRevalidationWarnMillis.compareAndSet(next, now + REVALIDATION_WARN_INTERVAL_MILLIS)) {
+            log.warn("Could not revalidate apptoken, serving cached token until grace period ends: {}", e.toString());
+        } else {
+            log.debug("Could not revalidate apptoken, serving cached token until grace period ends: {}", e.toString());
+        }
+        tokens.asMap().replace(apptokenId, stale, new Entry(stale.token, stale.validatedAtMillis, true));
+    }
+
+    /**
+     * Hver kaller får sin egen exception med sin egen stacktrace, i stedet for én delt instans som kan endres
+     * (addSuppressed, initCause) av flere tråder samtidig. Kopien lages ved serialisering, siden
+     * TokenServiceClientException kommer fra klientbiblioteket.
+     */
+    static TokenServiceClientException copyOf(TokenServiceClientException cached) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(cached);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                TokenServiceClientException copy = (TokenServiceClientException) in.readObject();
+                copy.fillInStackTrace();
+                return copy;
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return cached;
+        }
+    }
+
+    private static ExecutorService createRevalidator() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(REVALIDATION_QUEUE_SIZE),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("apptoken-revalidate-%d")
+                        .setDaemon(true)
+                        .build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        final ApplicationToken token;
+        final long validatedAtMillis;
+        final boolean revalidationFailed;
+    }
+}
@@ -6,14 +6,13 @@ import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import no.obos.iam.access.TokenCheckResult;
 import no.obos.iam.tokenservice.ApplicationToken;
-import no.obos.iam.tokenservice.TokenServiceClient;
 import no.obos.iam.tokenservice.TokenServiceClientException;
 import no.obos.util.model.ProblemResponse;
 import no.obos.util.servicebuilder.addon.ApplicationTokenFilterAddon;
-import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
-import no.obos.util.servicebuilder.annotations.AppTokenRequired;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorization;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorizations;
 import no.obos.util.servicebuilder.model.Constants;
-import no.obos.util.servicebuilder.util.AnnotationUtil;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceTimeoutException;
 
 import javax.annotation.Priority;
 import javax.inject.Inject;
@@ -25,7 +24,6 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 import java.security.Principal;
-import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -42,7 +40,7 @@ public class ApplicationTokenFilter implements ContainerRequestFilter {
 
     private final NumericAppIdApplicationTokenAccessValidator applicationTokenAccessValidator;
     final ApplicationTokenFilterAddon configuration;
-    private final TokenServiceClient tokenServiceClient;
+    private final ApplicationTokenCache applicationTokenCache;
 
     final private ResourceInfo resourceInfo;
 
@@ -57,67 +55,50 @@ public class ApplicationTokenFilter implements ContainerRequestFilter {
         if (apptokenid == null || apptokenid.trim().isEmpty()) {
             handleErrorNoAppToken(requestContext);
         } else {
-            TokenCheckResult result = checkAppTokenAndWhitelist(apptokenid);
+            TokenCheckResult result;
+            ApplicationToken applicationToken;
+            try {
+                // Hentes én gang per kall, og samme token brukes både til validering og whitelist
+                applicationToken = applicationTokenCache.getApptokenById(apptokenid);
+                result = applicationTokenAccessValidator.checkApplicationToken(applicationToken);
+            } catch (TokenServiceClientException e) {
+                if (e.getIssue() != TokenServiceClientException.Issue.INVALID_APPLICATION_TOKEN_ID) {
+                    throw new RuntimeException("Service call failed", e);
+                }
+                applicationToken = null;
+                result = TokenCheckResult.INVALID_TOKEN;
+            } catch (TokenServiceTimeoutException e) {
+                handleUnauthorized(requestContext, "Apptokenid '" + apptokenid + "' could not be verified: " + e.getMessage());
+                return;
+            }
+            result = adjustForWhitelist(result, getApplicationId(applicationToken));
 
             if (result != AUTHORIZED) {
                 handleErrorUnauthorized(requestContext, apptokenid, result);
             } else {
-                requestContext.setSecurityContext(new AutentiseringsContext(getApplicationToken(apptokenid)));
+                requestContext.setSecurityContext(new AutentiseringsContext(applicationToken));
             }
         }
     }
 
-    private TokenCheckResult checkAppTokenAndWhitelist(String apptokenid) {
-        TokenCheckResult result = applicationTokenAccessValidator.checkApplicationTokenId(apptokenid);
-        return adjustForWhitelist(result, getApplicationId(apptokenid));
-    }
-
     private TokenCheckResult adjustForWhitelist(TokenCheckResult result, Integer applicationId) {
-        if (result == UNAUTHORIZED && isInWhitelist(applicationId)) {
+        ResourceAuthorization authorization = ResourceAuthorizations.get(resourceInfo);
+        if (result == UNAUTHORIZED && authorization.isWhitelisted(applicationId)) {
             return AUTHORIZED;
         }
-        if (result == AUTHORIZED && isExclusiveWhitelist() && ! isInWhitelist(applicationId)) {
+        if (result == AUTHORIZED && authorization.exclusiveWhitelist && ! authorization.isWhitelisted(applicationId)) {
             return UNAUTHORIZED;
         }
         return result;
     }
 
-    private ApplicationToken getApplicationToken(String apptokenid) {
-        try {
-            return tokenServiceClient.getApptokenById(apptokenid);
-        } catch (TokenServiceClientException e) {
-            return null;
-        }
-    }
-
-    private Integer getApplicationId(String apptokenid) {
-        return Optional.ofNullable(getApplicationToken(apptokenid))
+    private static Integer getApplicationId(ApplicationToken applicationToken) {
+        return Optional.ofNullable(applicationToken)
                 .map(ApplicationToken::getApplicationId)
                 .map(Integer::parseInt)
                 .orElse(null);
     }
 
-    private Boolean isExclusiveWhitelist() {
-        return Optional.ofNullable(getWhitelistAnnotation())
-                .map(AppIdWhitelist::exclusive)
-                .orElse(false);
-    }
-
-    private boolean isInWhitelist(Integer applicationId) {
-        if (applicationId == null) {
-            return false;
-        }
-        return Optional.ofNullable(getWhitelistAnnotation())
-                .map(AppIdWhitelist::value)
-                .map(Arrays::stream)
-                .map(whitelistAppIds -> whitelistAppIds.anyMatch(whitelistedAppId -> applicationId == whitelistedAppId))
-                .orElse(false);
-    }
-
-    private AppIdWhitelist getWhitelistAnnotation() {
-        return AnnotationUtil.getAnnotation(AppIdWhitelist.class, resourceInfo.getResourceMethod());
-    }
-
     private void handleErrorUnauthorized(ContainerRequestContext requestContext, String apptokenid, TokenCheckResult result) {
         handleUnauthorized(requestContext, "Apptokenid '" + apptokenid + "' is " + result);
     }
@@ -135,26 +116,12 @@ public class ApplicationTokenFilter implements ContainerRequestFilter {
     }
 
     public boolean alwaysAccept(ContainerRequestContext requestContext) {
-        String absolutePath = requestContext.getUriInfo().getAbsolutePath().toString();
-        String requestMethod = requestContext.getMethod();
-
-        AppTokenRequired methodAnnotation = resourceInfo.getResourceMethod() != null
-                ? resourceInfo.getResourceMethod().getAnnotation(AppTokenRequired.class)
-                : null;
-        AppTokenRequired classAnnotation = resourceInfo.getResourceClass() != null
-                ? resourceInfo.getResourceClass().getAnnotation(AppTokenRequired.class)
-                : null;
-        boolean annotationFasttrack = ! configuration.requireAppTokenByDefault;
-        if (methodAnnotation != null) {
-            annotationFasttrack = ! methodAnnotation.value();
-        } else if (classAnnotation != null) {
-            annotationFasttrack = ! classAnnotation.value();
-        }
+        ResourceAuthorization authorization = ResourceAuthorizations.get(resourceInfo);
 
-        return absolutePath.contains("swagger") ||
-                "OPTIONS".equals(requestMethod) ||
+        return authorization.swaggerResource ||
+                "OPTIONS".equals(requestContext.getMethod()) ||
                 configuration.fasttrackFilter.test(requestContext) ||
-                annotationFasttrack;
+                ! authorization.appTokenRequired(configuration.requireAppTokenByDefault);
     }
 
     @Value
@@ -0,0 +1,84 @@
+package no.obos.util.servicebuilder.applicationtoken;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holder på applikasjonens egen apptoken-id og fornyer den i bakgrunnen.
+ * <p>
+ * Første kall henter token synkront. Deretter fornyes token med fast intervall i en egen tråd, og kallere får alltid
+ * siste gyldige verdi uten å vente på TokenService. Feilede fornyelser prøves på nytt med eksponentiell backoff.
+ */
+@Slf4j
+public class ApplicationTokenHolder implements Supplier<String> {
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long MIN_BACKOFF_MILLIS = 1_000;
+    static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final Supplier<String> fetcher;
+    private final long refreshIntervalMillis;
+    private volatile String tokenId;
+    private ScheduledExecutorService scheduler;
+    private boolean stopped;
+
+    public ApplicationTokenHolder(Supplier<String> fetcher, long refreshIntervalMillis) {
+        this.fetcher = fetcher;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    @Override
+    public String get() {
+        String current = tokenId;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (tokenId == null) {
+                tokenId = fetcher.get();
+                if (scheduler == null) {
+                    scheduleRefresh(refreshIntervalMillis, MIN_BACKOFF_MILLIS);
+                }
+            }
+            return tokenId;
+        }
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private synchronized void scheduleRefresh(long delayMillis, long nextBackoffMillis) {
+        if (stopped) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("apptoken-refresh-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        scheduler.schedule(() -> refresh(nextBackoffMillis), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh(long backoffMillis) {
+        try {
+            String refreshed = fetcher.get();
+            if (refreshed != null) {
+                tokenId = refreshed;
+            }
+            scheduleRefresh(refreshIntervalMillis, MIN_BACKOFF_MILLIS);
+        } catch (RuntimeException ex) {
+            log.warn("Could not refresh application token, retrying in {} ms", backoffMillis, ex);
+            scheduleRefresh(backoffMillis, Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS));
+        }
+    }
+}
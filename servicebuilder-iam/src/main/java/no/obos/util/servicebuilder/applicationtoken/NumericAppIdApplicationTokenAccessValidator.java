@@ -14,11 +14,15 @@ import java.util.stream.Collectors;
  * id to be an integer. **/
 public class NumericAppIdApplicationTokenAccessValidator {
 
-    private TokenServiceClient tokenServiceClient;
+    private ApplicationTokenCache applicationTokenCache;
     private Set<Integer> acceptedAppIds = new HashSet<>();
 
     public NumericAppIdApplicationTokenAccessValidator(TokenServiceClient tokenServiceClient, String acceptedAppIds) {
-        this.tokenServiceClient = tokenServiceClient;
+        this(ApplicationTokenCache.uncached(tokenServiceClient), acceptedAppIds);
+    }
+
+    public NumericAppIdApplicationTokenAccessValidator(ApplicationTokenCache applicationTokenCache, String acceptedAppIds) {
+        this.applicationTokenCache = applicationTokenCache;
         this.setAcceptedAppIds(acceptedAppIds);
     }
 
@@ -39,7 +43,7 @@ public class NumericAppIdApplicationTokenAccessValidator {
     TokenCheckResult checkApplicationTokenId(String applicationTokenId) {
         ApplicationToken applicationToken;
         try {
-            applicationToken = tokenServiceClient.getApptokenById(applicationTokenId);
+            applicationToken = applicationTokenCache.getApptokenById(applicationTokenId);
         } catch (TokenServiceClientException tsce) {
             if (tsce.getIssue() == TokenServiceClientException.Issue.INVALID_APPLICATION_TOKEN_ID)
                 return TokenCheckResult.INVALID_TOKEN;
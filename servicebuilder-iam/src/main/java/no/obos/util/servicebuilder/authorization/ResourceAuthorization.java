@@ -0,0 +1,101 @@
+package no.obos.util.servicebuilder.authorization;
+
+import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
+import no.obos.util.servicebuilder.annotations.AppTokenRequired;
+import no.obos.util.servicebuilder.annotations.UserTokenRequired;
+import no.obos.util.servicebuilder.util.AnnotationUtil;
+
+import javax.ws.rs.Path;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Autorisasjonsoppsett for én ressursmetode, utledet fra annotasjoner én gang.
+ * Null for appTokenRequired/userTokenRequired betyr at metoden ikke er annotert, og at addon-default gjelder.
+ */
+public class ResourceAuthorization {
+    public final Boolean appTokenRequired;
+    public final Boolean userTokenRequired;
+    /**
+     * Sortert, null dersom metoden ikke har AppIdWhitelist.
+     */
+    private final int[] whitelistedAppIds;
+    public final boolean exclusiveWhitelist;
+    public final boolean swaggerResource;
+
+    ResourceAuthorization(Boolean appTokenRequired, Boolean userTokenRequired, int[] whitelistedAppIds, boolean exclusiveWhitelist, boolean swaggerResource) {
+        this.appTokenRequired = appTokenRequired;
+        this.userTokenRequired = userTokenRequired;
+        this.whitelistedAppIds = whitelistedAppIds;
+        this.exclusiveWhitelist = exclusiveWhitelist;
+        this.swaggerResource = swaggerResource;
+    }
+
+    public boolean appTokenRequired(boolean byDefault) {
+        return appTokenRequired != null ? appTokenRequired : byDefault;
+    }
+
+    public boolean userTokenRequired(boolean byDefault) {
+        return userTokenRequired != null ? userTokenRequired : byDefault;
+    }
+
+    public boolean isWhitelisted(Integer applicationId) {
+        return applicationId != null
+                && whitelistedAppIds != null
+                && Arrays.binarySearch(whitelistedAppIds, applicationId) >= 0;
+    }
+
+    static ResourceAuthorization of(Class<?> resourceClass, Method resourceMethod) {
+        AppTokenRequired appTokenRequired = annotation(AppTokenRequired.class, resourceClass, resourceMethod);
+        UserTokenRequired userTokenRequired = annotation(UserTokenRequired.class, resourceClass, resourceMethod);
+        AppIdWhitelist whitelist = resourceMethod != null
+                ? AnnotationUtil.getAnnotation(AppIdWhitelist.class, resourceMethod)
+                : null;
+        int[] whitelistedAppIds = null;
+        if (whitelist != null) {
+            whitelistedAppIds = whitelist.value().clone();
+            Arrays.sort(whitelistedAppIds);
+        }
+        return new ResourceAuthorization(
+                appTokenRequired != null ? appTokenRequired.value() : null,
+                userTokenRequired != null ? userTokenRequired.value() : null,
+                whitelistedAppIds,
+                whitelist != null && whitelist.exclusive(),
+                isSwagger(resourceClass) || isSwagger(resourceMethod)
+        );
+    }
+
+    private static <T extends java.lang.annotation.Annotation> T annotation(Class<T> annotation, Class<?> resourceClass, Method resourceMethod) {
+        T methodAnnotation = resourceMethod != null
+                ? resourceMethod.getAnnotation(annotation)
+                : null;
+        if (methodAnnotation != null) {
+            return methodAnnotation;
+        }
+        return resourceClass != null
+                ? resourceClass.getAnnotation(annotation)
+                : null;
+    }
+
+    /**
+     * Path er ikke @Inherited, så superklassene sjekkes også. SwaggerAddon registrerer en subklasse av ApiListingResource.
+     */
+    private static boolean isSwagger(Class<?> resourceClass) {
+        for (Class<?> clazz = resourceClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            Path path = clazz.getAnnotation(Path.class);
+            if (clazz.getName().startsWith("io.swagger.")
+                    || path != null && path.value().contains("swagger")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSwagger(Method resourceMethod) {
+        if (resourceMethod == null) {
+            return false;
+        }
+        Path path = resourceMethod.getAnnotation(Path.class);
+        return path != null && path.value().contains("swagger");
+    }
+}
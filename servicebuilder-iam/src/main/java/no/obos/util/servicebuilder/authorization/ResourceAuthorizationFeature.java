@@ -0,0 +1,26 @@
+package no.obos.util.servicebuilder.authorization;
+
+import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import java.util.Arrays;
+
+/**
+ * Beregner autorisasjonsoppsett for alle ressursmetoder når Jersey bygger ressursmodellen,
+ * og registrerer roller fra @RolesAllowed i {@link RoleOrdinals}.
+ */
+public class ResourceAuthorizationFeature implements DynamicFeature {
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        ResourceAuthorizations.get(resourceInfo);
+        registerRoles(resourceInfo.getResourceMethod().getAnnotation(RolesAllowed.class));
+        registerRoles(resourceInfo.getResourceClass().getAnnotation(RolesAllowed.class));
+    }
+
+    private static void registerRoles(RolesAllowed rolesAllowed) {
+        if (rolesAllowed != null) {
+            RoleOrdinals.register(Arrays.asList(rolesAllowed.value()));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package no.obos.util.servicebuilder.authorization;
+
+import javax.ws.rs.container.ResourceInfo;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Oppslag av {@link ResourceAuthorization} per ressursklasse og -metode.
+ * Fylles ved oppstart av {@link ResourceAuthorizationFeature}, slik at filtrene slipper refleksjon per kall.
+ */
+public class ResourceAuthorizations {
+    private static final Map<Class<?>, Map<Method, ResourceAuthorization>> authorizations = new ConcurrentHashMap<>();
+
+    public static ResourceAuthorization get(ResourceInfo resourceInfo) {
+        return get(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+    }
+
+    public static ResourceAuthorization get(Class<?> resourceClass, Method resourceMethod) {
+        if (resourceMethod == null) {
+            return ResourceAuthorization.of(resourceClass, null);
+        }
+        Class<?> key = resourceClass != null ? resourceClass : Void.class;
+        return authorizations
+                .computeIfAbsent(key, it -> new ConcurrentHashMap<>())
+                .computeIfAbsent(resourceMethod, method -> ResourceAuthorization.of(resourceClass, method));
+    }
+}
@@ -0,0 +1,67 @@
+package no.obos.util.servicebuilder.authorization;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tildeler hver rolle (tilgang) et fast nummer, slik at en brukers roller kan lagres som {@link RoleSet}.
+ * <p>
+ * Bare roller fra @RolesAllowed og rolleGirTilgang, registrert ved oppstart, får nummer. Andre tilganger i brukertokens
+ * får aldri nummer, slik at registeret ikke vokser med det tokens inneholder.
+ * Roller normaliseres med trim og store bokstaver; registrerte skrivemåter slås opp direkte uten ny streng.
+ */
+public class RoleOrdinals {
+    private static final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> lookup = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> names = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextOrdinal = new AtomicInteger();
+
+    public static void register(Collection<String> roles) {
+        roles.forEach(RoleOrdinals::register);
+    }
+
+    /**
+     * Registrerer en rolle slik den skrives i kode, f.eks. i @RolesAllowed.
+     */
+    public static void register(String role) {
+        if (role != null) {
+            String normalized = normalize(role);
+            int ordinal = ordinals.computeIfAbsent(normalized, it -> {
+                int next = nextOrdinal.getAndIncrement();
+                names.put(next, it);
+                return next;
+            });
+            lookup.putIfAbsent(role, ordinal);
+            lookup.putIfAbsent(normalized, ordinal);
+        }
+    }
+
+    /**
+     * Nummer for en tilgang slik den er lagret (normalisert), eller -1 dersom den ikke er registrert.
+     */
+    public static int ordinalOfTilgang(String tilgang) {
+        Integer ordinal = ordinals.get(tilgang);
+        return ordinal != null ? ordinal : - 1;
+    }
+
+    /**
+     * Nummer for rollen slik isUserInRole får den, eller -1 dersom den ikke er registrert.
+     */
+    public static int ordinalOf(String role) {
+        Integer ordinal = lookup.get(role);
+        if (ordinal == null) {
+            ordinal = ordinals.get(normalize(role));
+        }
+        return ordinal != null ? ordinal : - 1;
+    }
+
+    static String nameOf(int ordinal) {
+        return names.get(ordinal);
+    }
+
+    static String normalize(String role) {
+        return role.trim().toUpperCase();
+    }
+}
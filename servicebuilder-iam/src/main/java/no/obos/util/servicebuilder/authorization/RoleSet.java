@@ -0,0 +1,103 @@
+package no.obos.util.servicebuilder.authorization;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Uforanderlig mengde roller, lagret som bitsett over {@link RoleOrdinals}.
+ * <p>
+ * Tilganger som ikke er registrert i RoleOrdinals (ingen ressurs sjekker dem) holdes i en egen, normalt tom, mengde.
+ */
+public final class RoleSet {
+    private static final long[] NO_WORDS = new long[0];
+
+    private final long[] words;
+    private final ImmutableSet<String> unregistered;
+    /**
+     * Navnene, beregnet ved første kall til toNames.
+     */
+    private volatile ImmutableSet<String> names;
+
+    private RoleSet(long[] words, ImmutableSet<String> unregistered) {
+        this.words = words;
+        this.unregistered = unregistered;
+    }
+
+    public static RoleSet of(Collection<String> tilganger) {
+        long[] words = NO_WORDS;
+        ImmutableSet.Builder<String> unregistered = null;
+        for (String tilgang : tilganger) {
+            int ordinal = RoleOrdinals.ordinalOfTilgang(tilgang);
+            if (ordinal < 0) {
+                if (unregistered == null) {
+                    unregistered = ImmutableSet.builder();
+                }
+                unregistered.add(tilgang);
+                continue;
+            }
+            int word = ordinal >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, word + 1);
+            }
+            words[word] |= 1L << ordinal;
+        }
+        return new RoleSet(words, unregistered != null ? unregistered.build() : ImmutableSet.of());
+    }
+
+    public boolean contains(String role) {
+        return contains(RoleOrdinals.ordinalOf(role))
+                || ! unregistered.isEmpty() && unregistered.contains(RoleOrdinals.normalize(role));
+    }
+
+    public boolean contains(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        int word = ordinal >>> 6;
+        return word < words.length && (words[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Registrerte roller i ordinal-rekkefølge, deretter uregistrerte i opprinnelig rekkefølge.
+     */
+    public ImmutableSet<String> toNames() {
+        ImmutableSet<String> cached = names;
+        if (cached == null) {
+            cached = buildNames();
+            names = cached;
+        }
+        return cached;
+    }
+
+    private ImmutableSet<String> buildNames() {
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                int ordinal = (word << 6) + Long.numberOfTrailingZeros(bits);
+                result.add(RoleOrdinals.nameOf(ordinal));
+                bits &= bits - 1;
+            }
+        }
+        return result.addAll(unregistered).build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RoleSet
+                && Arrays.equals(words, ((RoleSet) o).words)
+                && unregistered.equals(((RoleSet) o).unregistered);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(words) + unregistered.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toNames().toString();
+    }
+}
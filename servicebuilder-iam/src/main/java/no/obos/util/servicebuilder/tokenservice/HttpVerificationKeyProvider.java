@@ -0,0 +1,68 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Henter nøkler fra TokenService som json: {"keys": [{"kid": "...", "key": "&lt;base64 X.509 RSA-nøkkel&gt;"}]}.
+ */
+public class HttpVerificationKeyProvider implements VerificationKeyProvider {
+    static final int TIMEOUT_MILLIS = 5_000;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String url;
+
+    public HttpVerificationKeyProvider(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public Map<String, PublicKey> fetchKeys() {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestProperty("Accept", "application/json");
+            if (connection.getResponseCode() != 200) {
+                throw new IllegalStateException("Could not fetch verification keys from " + url + ", status " + connection.getResponseCode());
+            }
+            try (InputStream body = connection.getInputStream()) {
+                return parseKeys(mapper.readTree(body));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not fetch verification keys from " + url, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    static Map<String, PublicKey> parseKeys(JsonNode json) {
+        ImmutableMap.Builder<String, PublicKey> keys = ImmutableMap.builder();
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            for (JsonNode key : json.path("keys")) {
+                byte[] encoded = Base64.getDecoder().decode(key.path("key").asText());
+                keys.put(key.path("kid").asText(), keyFactory.generatePublic(new X509EncodedKeySpec(encoded)));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid verification key", e);
+        }
+        return keys.build();
+    }
+}
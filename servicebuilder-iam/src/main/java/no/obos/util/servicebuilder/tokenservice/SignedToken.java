@@ -0,0 +1,15 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import com.google.common.collect.ImmutableList;
+import lombok.Value;
+
+/**
+ * Innholdet i et verifisert, signert apptoken.
+ */
+@Value
+public class SignedToken {
+    String keyId;
+    String applicationId;
+    long expiresAtMillis;
+    ImmutableList<String> roles;
+}
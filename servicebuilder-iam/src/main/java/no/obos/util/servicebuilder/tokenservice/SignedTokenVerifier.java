@@ -0,0 +1,199 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifiserer signerte apptokens lokalt, uten kall til TokenService.
+ * <p>
+ * Tokens har formen base64url(header).base64url(claims).base64url(signatur), signert med RS256. Header inneholder
+ * nøkkel-id (kid), claims inneholder app_id, exp (sekunder siden epoch) og eventuelt roles.
+ * Nøkler hentes ved oppstart og fornyes jevnlig i bakgrunnen. Ved ukjent kid slås tokenet opp i TokenService, og
+ * nøklene hentes på nytt i bakgrunnen (høyst én gang per {@link #MIN_ON_DEMAND_REFRESH_MILLIS}), slik at
+ * kallende tråd aldri venter på nøkkelendepunktet.
+ */
+@Slf4j
+public class SignedTokenVerifier {
+    public static final long DEFAULT_KEY_REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long MIN_ON_DEMAND_REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final VerificationKeyProvider keyProvider;
+    private final long refreshIntervalMillis;
+    private volatile Map<String, PublicKey> keys = ImmutableMap.of();
+    private volatile long lastRefreshMillis;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private volatile ScheduledExecutorService scheduler;
+
+    private final Counter verified = MetricsRegistry.counter("tokenservice.offline.verified");
+    private final Counter rejected = MetricsRegistry.counter("tokenservice.offline.rejected");
+    private final Counter unknownKeys = MetricsRegistry.counter("tokenservice.offline.unknownkey");
+
+    public SignedTokenVerifier(VerificationKeyProvider keyProvider, long refreshIntervalMillis) {
+        this.keyProvider = keyProvider;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    public static boolean isSignedToken(String token) {
+        int first = token.indexOf('.');
+        return first > 0 && token.indexOf('.', first + 1) > first + 1;
+    }
+
+    /**
+     * Henter nøkler og starter jevnlig fornyelse. Feiler hentingen slås tokens opp i TokenService inntil nøkler er hentet.
+     */
+    public synchronized void start() {
+        refreshKeysQuietly();
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("tokenservice-keys-%d")
+                    .setDaemon(true)
+                    .build());
+            if (refreshIntervalMillis > 0) {
+                scheduler.scheduleWithFixedDelay(this::refreshKeysQuietly, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return innholdet i tokenet, eller null dersom signaturnøkkelen er ukjent og tokenet må slås opp i TokenService
+     * @throws InvalidSignedTokenException dersom tokenet er ugyldig eller utløpt
+     */
+    public SignedToken verify(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            throw reject("Malformed signed token");
+        }
+        JsonNode header = decode(parts[0]);
+        String keyId = header.path("kid").asText(null);
+        if (! "RS256".equals(header.path("alg").asText())) {
+            throw reject("Unsupported signature algorithm " + header.path("alg").asText());
+        }
+        PublicKey key = findKey(keyId);
+        if (key == null) {
+            unknownKeys.inc();
+            return null;
+        }
+        if (! signatureMatches(key, parts)) {
+            throw reject("Invalid signature for key " + keyId);
+        }
+        JsonNode claims = decode(parts[1]);
+        long expiresAtMillis = TimeUnit.SECONDS.toMillis(claims.path("exp").asLong());
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            throw reject("Signed token expired");
+        }
+        String applicationId = claims.path("app_id").asText(null);
+        if (applicationId == null) {
+            throw reject("Signed token without app_id");
+        }
+        ImmutableList.Builder<String> roles = ImmutableList.builder();
+        claims.path("roles").forEach(role -> roles.add(role.asText()));
+        verified.inc();
+        return new SignedToken(keyId, applicationId, expiresAtMillis, roles.build());
+    }
+
+    private PublicKey findKey(String keyId) {
+        if (keyId == null) {
+            return null;
+        }
+        PublicKey key = keys.get(keyId);
+        if (key == null) {
+            requestRefresh();
+        }
+        return key;
+    }
+
+    /**
+     * Ber om nye nøkler i bakgrunnen. Tokenet som utløste det slås opp i TokenService i mellomtiden.
+     */
+    private void requestRefresh() {
+        ScheduledExecutorService current = scheduler;
+        if (current == null
+                || System.currentTimeMillis() - lastRefreshMillis < MIN_ON_DEMAND_REFRESH_MILLIS
+                || ! refreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            current.execute(() -> {
+                try {
+                    if (System.currentTimeMillis() - lastRefreshMillis >= MIN_ON_DEMAND_REFRESH_MILLIS) {
+                        refreshKeysQuietly();
+                    }
+                } finally {
+                    refreshPending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshPending.set(false);
+        }
+    }
+
+    private void refreshKeys() {
+        lastRefreshMillis = System.currentTimeMillis();
+        keys = ImmutableMap.copyOf(keyProvider.fetchKeys());
+    }
+
+    private void refreshKeysQuietly() {
+        try {
+            refreshKeys();
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh token verification keys, keeping {} known keys", keys.size(), e);
+        }
+    }
+
+    private InvalidSignedTokenException reject(String message) {
+        rejected.inc();
+        return new InvalidSignedTokenException(message);
+    }
+
+    private static boolean signatureMatches(PublicKey key, String[] parts) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(key);
+            signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+            return signature.verify(Base64.getUrlDecoder().decode(parts[2]));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private JsonNode decode(String part) {
+        try {
+            return mapper.readTree(Base64.getUrlDecoder().decode(part));
+        } catch (IOException | IllegalArgumentException e) {
+            throw reject("Malformed signed token");
+        }
+    }
+
+    public static class InvalidSignedTokenException extends RuntimeException {
+        public InvalidSignedTokenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import lombok.extern.slf4j.Slf4j;
+import no.obos.iam.tokenservice.ApplicationToken;
+import no.obos.iam.tokenservice.TokenServiceClient;
+import no.obos.iam.tokenservice.UserToken;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.util.SingleFlight;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Oppslag av apptokens og brukertokens mot TokenService.
+ * <p>
+ * Samtidige oppslag på samme id venter på ett felles kall, slik at TokenService ikke får en storm av like kall
+ * ved kald cache eller nye tokens. Kallet avbrytes med {@link TokenServiceTimeoutException} etter timeoutMillis,
+ * og feil fra TokenService gis videre til alle som venter. Tidsavbrudd telles i tokenservice.lookup.timeouts.
+ * Er alle MAX_THREADS opptatt avvises oppslaget straks med samme exception, og telles i tokenservice.lookup.rejected.
+ * <p>
+ * Med {@link SignedTokenVerifier} verifiseres signerte apptokens lokalt. Ugyldige eller utløpte signerte tokens, og tokens signert med ukjent nøkkel, slås opp i
+ * TokenService, slik at de avvises med samme TokenServiceClientException som andre ugyldige tokens.
+ */
+@Slf4j
+public class TokenServiceLookup {
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final int MAX_THREADS = 32;
+    static final long REJECTED_WARN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TokenServiceClient tokenServiceClient;
+    private final long timeoutMillis;
+    private final SignedTokenVerifier signedTokenVerifier;
+    private final ExecutorService executor;
+    private final SingleFlight<String, ApplicationToken> apptokenLookups = new SingleFlight<>();
+    private final SingleFlight<String, UserToken> usertokenLookups = new SingleFlight<>();
+    private final Counter timeouts = MetricsRegistry.counter("tokenservice.lookup.timeouts");
+    private final Counter rejected = MetricsRegistry.counter("tokenservice.lookup.rejected");
+    private final AtomicLong nextRejectedWarnMillis = new AtomicLong();
+    private final Supplier<Number> inFlightGauge = () -> apptokenLookups.inFlightCount() + usertokenLookups.inFlightCount();
+
+    public TokenServiceLookup(TokenServiceClient tokenServiceClient, long timeoutMillis) {
+        this(tokenServiceClient, timeoutMillis, null);
+    }
+
+    public TokenServiceLookup(TokenServiceClient tokenServiceClient, long timeoutMillis, SignedTokenVerifier signedTokenVerifier) {
+        this.tokenServiceClient = tokenServiceClient;
+        this.timeoutMillis = timeoutMillis;
+        this.signedTokenVerifier = signedTokenVerifier;
+        this.executor = timeoutMillis > 0 ? createExecutor() : null;
+    }
+
+    /**
+     * Uten tidsavbrudd; kallene gjøres på kallende tråd.
+     */
+    public static TokenServiceLookup direct(TokenServiceClient tokenServiceClient) {
+        return new TokenServiceLookup(tokenServiceClient, 0);
+    }
+
+    public ApplicationToken getApptokenById(String apptokenId) {
+        if (verifiesLocally(apptokenId)) {
+            try {
+                SignedToken signedToken = signedTokenVerifier.verify(apptokenId);
+                if (signedToken != null) {
+                    ApplicationToken applicationToken = new ApplicationToken();
+                    applicationToken.setApplicationTokenId(apptokenId);
+                    applicationToken.setApplicationId(signedToken.getApplicationId());
+                    return applicationToken;
+                }
+            } catch (SignedTokenVerifier.InvalidSignedTokenException e) {
+                warnRejectedSignedToken(e);
+            }
+        }
+        return apptokenLookups.execute(apptokenId, () -> withTimeout(() -> tokenServiceClient.getApptokenById(apptokenId)));
+    }
+
+    public UserToken getUserTokenById(String usertokenId) {
+        return usertokenLookups.execute(usertokenId, () -> withTimeout(() -> tokenServiceClient.getUserTokenById(usertokenId)));
+    }
+
+    /**
+     * Om tokenet kan verifiseres uten TokenService, og derfor ikke bør mellomlagres utover sin egen levetid.
+     */
+    public boolean verifiesLocally(String apptokenId) {
+        return signedTokenVerifier != null && SignedTokenVerifier.isSignedToken(apptokenId);
+    }
+
+    /**
+     * Registrerer samtidige oppslag som tokenservice.lookup.inflight. Gjøres av TokenServiceAddon, slik at andre
+     * instanser (f.eks. direct) ikke erstatter måleren.
+     */
+    public void registerGauges() {
+        MetricsRegistry.registerGauge("tokenservice.lookup.inflight", inFlightGauge);
+    }
+
+    public void stop() {
+        MetricsRegistry.removeGauge("tokenservice.lookup.inflight", inFlightGauge);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (signedTokenVerifier != null) {
+            signedTokenVerifier.stop();
+        }
+    }
+
+    /**
+     * Avviste tokens telles i tokenservice.offline.rejected. En klient med utløpt token ville ellers gitt én warn per
+     * kall, så det logges høyst én warn per REJECTED_WARN_INTERVAL_MILLIS.
+     */
+    private void warnRejectedSignedToken(SignedTokenVerifier.InvalidSignedTokenException e) {
+        long now = System.currentTimeMillis();
+        long next = nextRejectedWarnMillis.get();
+        if (now >= next && nextRejectedWarnMillis.compareAndSet(next, now + REJECTED_WARN_INTERVAL_MILLIS)) {
+            log.warn("Rejected signed apptoken, asking TokenService: {}", e.getMessage());
+        } else {
+            log.debug("Rejected signed apptoken, asking TokenService: {}", e.getMessage());
+        }
+    }
+
+    private <T> T withTimeout(Supplier<T> call) {
+        if (executor == null) {
+            return call.get();
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(call::get);
+        } catch (RejectedExecutionException e) {
+            rejected.inc();
+            throw new TokenServiceTimeoutException("All " + MAX_THREADS + " TokenService lookup threads busy");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.inc();
+            throw new TokenServiceTimeoutException("No response from TokenService within " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Når alle tråder er opptatt avvises kallet, i stedet for å gjøres på kallende tråd uten tidsavbrudd
+        return new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tokenservice-lookup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
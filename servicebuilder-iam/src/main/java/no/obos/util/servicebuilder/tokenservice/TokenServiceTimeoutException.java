@@ -0,0 +1,10 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+/**
+ * TokenService svarte ikke innen tidsfristen.
+ */
+public class TokenServiceTimeoutException extends RuntimeException {
+    public TokenServiceTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import java.security.PublicKey;
+import java.util.Map;
+
+/**
+ * Leverer offentlige nøkler for verifisering av signerte tokens, per nøkkel-id (kid).
+ */
+@FunctionalInterface
+public interface VerificationKeyProvider {
+    Map<String, PublicKey> fetchKeys();
+}
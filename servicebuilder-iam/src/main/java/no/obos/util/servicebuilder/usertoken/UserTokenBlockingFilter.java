@@ -1,7 +1,8 @@
 package no.obos.util.servicebuilder.usertoken;
 
 import no.obos.util.servicebuilder.addon.UserTokenFilterAddon;
-import no.obos.util.servicebuilder.annotations.UserTokenRequired;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorization;
+import no.obos.util.servicebuilder.authorization.ResourceAuthorizations;
 
 import javax.annotation.Priority;
 import javax.inject.Inject;
@@ -30,33 +31,14 @@ public class UserTokenBlockingFilter implements ContainerRequestFilter {
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
-        String aboslutePath = requestContext.getUriInfo().getAbsolutePath().toString();
-        String requestMethod = requestContext.getMethod();
+        ResourceAuthorization authorization = ResourceAuthorizations.get(resourceInfo);
 
-        if (aboslutePath.contains("swagger.json") || "OPTIONS".equals(requestMethod)) {
+        if (authorization.swaggerResource || "OPTIONS".equals(requestContext.getMethod())) {
             return;
         }
 
-        if (requireUserToken() && securityContext.getUserPrincipal() == null) {
+        if (authorization.userTokenRequired(configuration.requireUserTokenByDefault) && securityContext.getUserPrincipal() == null) {
             throw new NotAuthorizedException("UsertokenId required");
         }
     }
-
-    private boolean requireUserToken() {
-        UserTokenRequired methodAnnotation = resourceInfo.getResourceMethod() != null
-                ? resourceInfo.getResourceMethod().getAnnotation(UserTokenRequired.class)
-                : null;
-        UserTokenRequired classAnnotation = resourceInfo.getResourceClass() != null
-                ? resourceInfo.getResourceClass().getAnnotation(UserTokenRequired.class)
-                : null;
-
-        if (methodAnnotation != null) {
-            return methodAnnotation.value();
-        }
-        if (classAnnotation != null) {
-            return classAnnotation.value();
-        }
-
-        return configuration.requireUserTokenByDefault;
-    }
 }
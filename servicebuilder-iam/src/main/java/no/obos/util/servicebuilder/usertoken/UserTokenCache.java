@@ -0,0 +1,83 @@
+package no.obos.util.servicebuilder.usertoken;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import no.obos.util.servicebuilder.metrics.Counter;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.usertoken.UserTokenFilter.AutentiseringsContext;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Mellomlager for ferdig beregnet AutentiseringsContext per brukertoken-id.
+ * <p>
+ * Samtidige oppslag på samme id venter på ett kall mot TokenService. Ved utlogging kan tokenet fjernes med invalidate.
+ * Treff og bom telles i metrics under tokenservice.usertoken.cache.
+ */
+public class UserTokenCache {
+    /**
+     * Av som standard. Levetiden er ikke knyttet til tokenets utløp, så en utlogget eller utløpt bruker slipper inn
+     * til oppføringen går ut. Skal bare slås på med en ttl godt under tokenenes levetid.
+     */
+    public static final long DEFAULT_TTL_MILLIS = 0;
+    public static final long DEFAULT_MAX_SIZE = 10_000;
+
+    private final Cache<String, AutentiseringsContext> contexts;
+    private final Counter hits = MetricsRegistry.counter("tokenservice.usertoken.cache.hits");
+    private final Counter misses = MetricsRegistry.counter("tokenservice.usertoken.cache.misses");
+    private final Supplier<Number> sizeGauge;
+
+    public UserTokenCache(long ttlMillis, long maxSize) {
+        this.contexts = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .build();
+        this.sizeGauge = contexts::size;
+    }
+
+    public void registerGauges() {
+        MetricsRegistry.registerGauge("tokenservice.usertoken.cache.size", sizeGauge);
+    }
+
+    public void stop() {
+        MetricsRegistry.removeGauge("tokenservice.usertoken.cache.size", sizeGauge);
+        contexts.invalidateAll();
+    }
+
+    public AutentiseringsContext get(String usertokenId, Supplier<AutentiseringsContext> loader) {
+        AutentiseringsContext cached = contexts.getIfPresent(usertokenId);
+        if (cached != null) {
+            hits.inc();
+            return cached;
+        }
+        try {
+            return contexts.get(usertokenId, () -> {
+                misses.inc();
+                return loader.get();
+            });
+        } catch (UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Fjerner token, f.eks. ved utlogging.
+     */
+    public void invalidate(String usertokenId) {
+        contexts.invalidate(usertokenId);
+    }
+
+    public void invalidateAll() {
+        contexts.invalidateAll();
+    }
+}
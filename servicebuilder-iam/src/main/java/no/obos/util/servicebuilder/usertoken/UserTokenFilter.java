@@ -3,16 +3,19 @@ package no.obos.util.servicebuilder.usertoken;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.Singular;
 import lombok.Value;
-import no.obos.iam.tokenservice.TokenServiceClient;
 import no.obos.iam.tokenservice.TokenServiceClientException;
 import no.obos.iam.tokenservice.UserToken;
 import no.obos.util.servicebuilder.addon.UserTokenFilterAddon;
+import no.obos.util.servicebuilder.authorization.RoleSet;
 import no.obos.util.servicebuilder.model.Constants;
 import no.obos.util.servicebuilder.model.UibBruker;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceLookup;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceTimeoutException;
 import org.jvnet.hk2.annotations.Optional;
 
 import javax.annotation.Priority;
@@ -33,19 +36,22 @@ import java.util.stream.Collectors;
 @Priority(Priorities.AUTHENTICATION)
 public class UserTokenFilter implements ContainerRequestFilter {
 
-    private final TokenServiceClient tokenServiceClient;
+    private final TokenServiceLookup tokenServiceLookup;
     private final UserTokenFilterAddon configuration;
     private final UserTokenAuthenticatedHandler authenticatedHandler;
+    private final UserTokenCache userTokenCache;
 
     @Inject
     public UserTokenFilter(
-            TokenServiceClient tokenServiceClient,
+            TokenServiceLookup tokenServiceLookup,
             UserTokenFilterAddon configuration,
-            @Optional UserTokenAuthenticatedHandler authenticatedHandler)
+            @Optional UserTokenAuthenticatedHandler authenticatedHandler,
+            @Optional UserTokenCache userTokenCache)
     {
-        this.tokenServiceClient = tokenServiceClient;
+        this.tokenServiceLookup = tokenServiceLookup;
         this.configuration = configuration;
         this.authenticatedHandler = authenticatedHandler;
+        this.userTokenCache = userTokenCache;
     }
 
     @Override
@@ -56,21 +62,28 @@ public class UserTokenFilter implements ContainerRequestFilter {
             return;
         }
 
+        AutentiseringsContext autentiseringsContext = userTokenCache != null
+                ? userTokenCache.get(usertokenId, () -> createAutentiseringsContext(usertokenId))
+                : createAutentiseringsContext(usertokenId);
+
+        requestContext.setSecurityContext(autentiseringsContext);
+
+        if (authenticatedHandler != null) {
+            authenticatedHandler.handle(requestContext);
+        }
+    }
+
+    private AutentiseringsContext createAutentiseringsContext(String usertokenId) {
         UserToken userToken;
         try {
-            userToken = tokenServiceClient.getUserTokenById(usertokenId);
-        } catch (TokenServiceClientException e) {
+            userToken = tokenServiceLookup.getUserTokenById(usertokenId);
+        } catch (TokenServiceClientException | TokenServiceTimeoutException e) {
             throw new NotAuthorizedException("UsertokenId: '" + usertokenId + "' not valid", e);
         }
 
         UibBrukerPrincipal brukerPrincipal = UibBrukerPrincipal.ofUserToken(userToken);
         ImmutableSet<String> tilganger = extractRolesAllowed(userToken, brukerPrincipal.uibBruker);
-
-        requestContext.setSecurityContext(new AutentiseringsContext(brukerPrincipal, tilganger));
-
-        if (authenticatedHandler != null) {
-            authenticatedHandler.handle(requestContext);
-        }
+        return new AutentiseringsContext(brukerPrincipal, tilganger);
     }
 
     private ImmutableSet<String> extractRolesAllowed(UserToken userToken, UibBruker bruker) {
@@ -91,14 +104,31 @@ public class UserTokenFilter implements ContainerRequestFilter {
     }
 
     @Value
-    @Builder(toBuilder = true)
-    @AllArgsConstructor
     public static class AutentiseringsContext implements SecurityContext {
 
         UibBrukerPrincipal bruker;
 
-        @Singular("tilgang")
-        ImmutableSet<String> tilganger;
+        /**
+         * Tilgangene lagres bare som RoleSet; {@link #getTilganger()} regnes ut fra den ved første kall og gjenbrukes.
+         */
+        @Getter(AccessLevel.NONE)
+        RoleSet roller;
+
+        @Builder
+        public AutentiseringsContext(UibBrukerPrincipal bruker, @Singular("tilgang") ImmutableSet<String> tilganger) {
+            this.bruker = bruker;
+            this.roller = RoleSet.of(tilganger);
+        }
+
+        public ImmutableSet<String> getTilganger() {
+            return roller.toNames();
+        }
+
+        public AutentiseringsContextBuilder toBuilder() {
+            return builder()
+                    .bruker(bruker)
+                    .tilganger(getTilganger());
+        }
 
         @Override
         public Principal getUserPrincipal() {
@@ -107,7 +137,7 @@ public class UserTokenFilter implements ContainerRequestFilter {
 
         @Override
         public boolean isUserInRole(String role) {
-            return tilganger.contains(role.trim().toUpperCase());
+            return roller.contains(role);
         }
 
         @Override
@@ -5,7 +5,9 @@ import no.obos.iam.tokenservice.ApplicationToken;
 import no.obos.iam.tokenservice.TokenServiceClient;
 import no.obos.util.servicebuilder.ServiceConfig;
 import no.obos.util.servicebuilder.ServiceDefinitionUtil;
+import no.obos.util.servicebuilder.TestService;
 import no.obos.util.servicebuilder.TestServiceRunner;
+import no.obos.util.servicebuilder.TestServiceRunnerJetty;
 import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
 import no.obos.util.servicebuilder.exception.ExternalResourceException;
 import no.obos.util.servicebuilder.model.Constants;
@@ -17,7 +19,10 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.eclipse.jetty.http.HttpStatus.OK_200;
 import static org.eclipse.jetty.http.HttpStatus.UNAUTHORIZED_401;
 import static org.mockito.Mockito.mock;
 
@@ -190,6 +195,32 @@ public class ApplicationTokenAddonTest {
                 .oneShotVoid(ResourceSuperFineGrained.class, ResourceSuperFineGrained::get2);
     }
 
+    @Test
+    public void swagger_is_served_without_apptoken() {
+        ServiceConfig serviceConfig = TestService.config
+                .addon(ExceptionMapperAddon.defaults)
+                .addon(SwaggerAddon.defaults)
+                .addon(ApplicationTokenFilterAddon.defaults.swaggerImplicitHeaders(false))
+                .addon(TokenServiceAddon.defaults.tokenServiceClient(tokenServiceClient));
+
+        Response response = TestServiceRunnerJetty.defaults(serviceConfig)
+                .property("server.port", "0")
+                .property("service.version", "1.0")
+                .property("server.contextPath", "/test/v1.0")
+                .property(ApplicationTokenFilterAddon.CONFIG_KEY_ACCEPTED_APP_IDS, AUTHORIZED)
+                .property(TokenServiceAddon.CONFIG_KEY_TOKENSERVICE_URL, "http://localhost:1/tokenservice")
+                .property(TokenServiceAddon.CONFIG_KEY_APP_ID, AUTHORIZED)
+                .property(TokenServiceAddon.CONFIG_KEY_APP_SECRET, "secret")
+                .oneShot(target -> target
+                        .path("api")
+                        .path("swagger.json")
+                        .request()
+                        .get()
+                );
+
+        assertThat(response.getStatus()).isEqualTo(OK_200);
+    }
+
     private <T> TestServiceRunner getTestServiceRunner(String apptokenHeader, Class<T> resource, T resourceImpl) {
         return TestServiceRunner.defaults(
                 ServiceConfig.defaults(ServiceDefinitionUtil.simple(resource))
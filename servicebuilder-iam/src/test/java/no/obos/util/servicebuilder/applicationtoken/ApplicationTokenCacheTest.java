@@ -0,0 +1,89 @@
+package no.obos.util.servicebuilder.applicationtoken;
+
+import no.obos.iam.tokenservice.ApplicationToken;
+import no.obos.iam.tokenservice.TokenServiceClient;
+import no.obos.iam.tokenservice.TokenServiceClientException;
+import no.obos.util.servicebuilder.metrics.MetricsRegistry;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceLookup;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApplicationTokenCacheTest {
+    private static final String APPTOKEN_ID = "abc-123";
+
+    private final TokenServiceClient tokenServiceClient = mock(TokenServiceClient.class);
+
+    @Test
+    public void validTokenIsLookedUpOnce() {
+        ApplicationToken token = new ApplicationToken();
+        token.setApplicationId("1");
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(token);
+        ApplicationTokenCache cache = new ApplicationTokenCache(tokenServiceClient);
+
+        assertThat(cache.getApptokenById(APPTOKEN_ID)).isSameAs(token);
+        assertThat(cache.getApptokenById(APPTOKEN_ID)).isSameAs(token);
+
+        verify(tokenServiceClient, times(1)).getApptokenById(APPTOKEN_ID);
+    }
+
+    @Test
+    public void invalidTokenIsCachedNegatively() {
+        TokenServiceClientException invalid = mock(TokenServiceClientException.class);
+        when(invalid.getIssue()).thenReturn(TokenServiceClientException.Issue.INVALID_APPLICATION_TOKEN_ID);
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenThrow(invalid);
+        ApplicationTokenCache cache = new ApplicationTokenCache(tokenServiceClient);
+
+        assertThatThrownBy(() -> cache.getApptokenById(APPTOKEN_ID)).isSameAs(invalid);
+        assertThatThrownBy(() -> cache.getApptokenById(APPTOKEN_ID)).isInstanceOf(TokenServiceClientException.class);
+
+        verify(tokenServiceClient, times(1)).getApptokenById(APPTOKEN_ID);
+    }
+
+    @Test
+    public void staleTokenIsServedWhileTokenServiceIsDown() throws Exception {
+        ApplicationToken token = new ApplicationToken();
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID))
+                .thenReturn(token)
+                .thenThrow(new IllegalStateException("tokenservice down"));
+        ApplicationTokenCache cache = new ApplicationTokenCache(TokenServiceLookup.direct(tokenServiceClient), 1, 60_000, 100);
+        try {
+            cache.getApptokenById(APPTOKEN_ID);
+            Thread.sleep(10);
+
+            assertThat(cache.getApptokenById(APPTOKEN_ID)).isSameAs(token);
+            verify(tokenServiceClient, timeout(1_000).times(2)).getApptokenById(APPTOKEN_ID);
+            assertThat(cache.getApptokenById(APPTOKEN_ID)).isSameAs(token);
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void uncachedAlwaysAsksTokenService() {
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(new ApplicationToken());
+        ApplicationTokenCache cache = ApplicationTokenCache.uncached(tokenServiceClient);
+
+        cache.getApptokenById(APPTOKEN_ID);
+        cache.getApptokenById(APPTOKEN_ID);
+
+        verify(tokenServiceClient, times(2)).getApptokenById(APPTOKEN_ID);
+    }
+
+    @Test
+    public void uncachedDoesNotCountAsCacheTraffic() {
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(new ApplicationToken());
+        ApplicationTokenCache cache = ApplicationTokenCache.uncached(tokenServiceClient);
+        long missesBefore = MetricsRegistry.counter("tokenservice.apptoken.cache.misses").get();
+
+        cache.getApptokenById(APPTOKEN_ID);
+
+        assertThat(MetricsRegistry.counter("tokenservice.apptoken.cache.misses").get()).isEqualTo(missesBefore);
+    }
+}
@@ -7,6 +7,7 @@ import no.obos.iam.tokenservice.TokenServiceClient;
 import no.obos.util.servicebuilder.addon.ApplicationTokenFilterAddon;
 import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
 import no.obos.util.servicebuilder.model.Constants;
+import no.obos.util.servicebuilder.tokenservice.TokenServiceTimeoutException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -16,13 +17,13 @@ import org.mockito.junit.MockitoJUnitRunner;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ResourceInfo;
-import javax.ws.rs.core.UriInfo;
-import java.net.URI;
 import java.util.function.Supplier;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -65,7 +66,7 @@ public class ApplicationTokenFilterTest {
         requestFilter = new ApplicationTokenFilter(
                 applicationTokenAccessValidator,
                 ApplicationTokenFilterAddon.defaults.fasttrackFilter(it -> fasttrack.get()),
-                tokenServiceClient,
+                new ApplicationTokenCache(tokenServiceClient),
                 resourceInfo);
 
         when(fasttrack.get()).thenReturn(false);
@@ -105,12 +106,13 @@ public class ApplicationTokenFilterTest {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_WHITELISTED));
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.AUTHORIZED);
 
         requestFilter.filter(requestContext);
 
         verify(requestContext, never()).abortWith(any());
+        verify(tokenServiceClient, times(1)).getApptokenById(APPTOKEN_ID);
     }
 
     @Test
@@ -118,7 +120,7 @@ public class ApplicationTokenFilterTest {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_WHITELISTED));
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.UNAUTHORIZED);
 
         requestFilter.filter(requestContext);
@@ -130,7 +132,7 @@ public class ApplicationTokenFilterTest {
     public void filter_apptokenId_authorized_whitelisted() throws Exception {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.AUTHORIZED);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_WHITELISTED));
         when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("annotatedExclusive"));
@@ -144,7 +146,7 @@ public class ApplicationTokenFilterTest {
     public void filter_apptokenId_unauthorized_whitelisted() throws Exception {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.UNAUTHORIZED);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_WHITELISTED));
         when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("annotatedExclusive"));
@@ -158,7 +160,7 @@ public class ApplicationTokenFilterTest {
     public void filter_apptokenId_authorized_notWhitelisted_exclusive() throws Exception {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.AUTHORIZED);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_NOT_WHITELISTED));
         when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("annotatedExclusive"));
@@ -172,7 +174,7 @@ public class ApplicationTokenFilterTest {
     public void filter_apptokenId_authorized_notWhitelisted_nonExclusive() throws Exception {
         ContainerRequestContext requestContext = createRequestContextMock();
         when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
-        when(applicationTokenAccessValidator.checkApplicationTokenId(APPTOKEN_ID))
+        when(applicationTokenAccessValidator.checkApplicationToken(any()))
                 .thenReturn(TokenCheckResult.AUTHORIZED);
         when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenReturn(createApplicationToken(APP_ID_NOT_WHITELISTED));
         when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("annotatedNonExclusive"));
@@ -182,6 +184,18 @@ public class ApplicationTokenFilterTest {
         verify(requestContext, never()).abortWith(any());
     }
 
+    @Test
+    public void filter_apptokenId_tokenServiceTimeout() throws Exception {
+        ContainerRequestContext requestContext = createRequestContextMock();
+        when(requestContext.getHeaderString(Constants.APPTOKENID_HEADER)).thenReturn(APPTOKEN_ID);
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID))
+                .thenThrow(new TokenServiceTimeoutException("No response from TokenService"));
+
+        requestFilter.filter(requestContext);
+
+        verify(requestContext).abortWith(argThat(response -> response.getStatus() == 401));
+    }
+
     private static ApplicationToken createApplicationToken(int applicationId) {
         ApplicationToken token = new ApplicationToken();
         token.setApplicationId(String.valueOf(applicationId));
@@ -190,9 +204,6 @@ public class ApplicationTokenFilterTest {
 
     private static ContainerRequestContext createRequestContextMock() throws Exception {
         ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
-        UriInfo uriInfo = mock(UriInfo.class);
-        when(uriInfo.getAbsolutePath()).thenReturn(new URI("http://domain.tld/path"));
-        when(requestContext.getUriInfo()).thenReturn(uriInfo);
         when(requestContext.getMethod()).thenReturn("GET");
         return requestContext;
     }
@@ -0,0 +1,57 @@
+package no.obos.util.servicebuilder.applicationtoken;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ApplicationTokenHolderTest {
+
+    @Test
+    public void fetchesOnlyOnceUntilRefreshed() {
+        AtomicInteger fetches = new AtomicInteger();
+        ApplicationTokenHolder holder = new ApplicationTokenHolder(() -> "token-" + fetches.incrementAndGet(), 60_000);
+        try {
+            assertThat(holder.get()).isEqualTo("token-1");
+            assertThat(holder.get()).isEqualTo("token-1");
+            assertThat(fetches.get()).isEqualTo(1);
+
+            holder.refresh(ApplicationTokenHolder.MIN_BACKOFF_MILLIS);
+
+            assertThat(holder.get()).isEqualTo("token-2");
+        } finally {
+            holder.stop();
+        }
+    }
+
+    @Test
+    public void failedRefreshKeepsPreviousToken() {
+        AtomicInteger fetches = new AtomicInteger();
+        ApplicationTokenHolder holder = new ApplicationTokenHolder(() -> {
+            if (fetches.incrementAndGet() > 1) {
+                throw new IllegalStateException("tokenservice down");
+            }
+            return "token";
+        }, 60_000);
+        try {
+            holder.get();
+
+            holder.refresh(ApplicationTokenHolder.MIN_BACKOFF_MILLIS);
+
+            assertThat(holder.get()).isEqualTo("token");
+        } finally {
+            holder.stop();
+        }
+    }
+
+    @Test
+    public void coldStartFailureIsPropagated() {
+        ApplicationTokenHolder holder = new ApplicationTokenHolder(() -> {
+            throw new IllegalStateException("tokenservice down");
+        }, 60_000);
+
+        assertThatThrownBy(holder::get).isInstanceOf(IllegalStateException.class);
+    }
+}
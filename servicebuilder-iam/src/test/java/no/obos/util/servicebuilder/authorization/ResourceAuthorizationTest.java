@@ -0,0 +1,73 @@
+package no.obos.util.servicebuilder.authorization;
+
+import no.obos.util.servicebuilder.annotations.AppIdWhitelist;
+import no.obos.util.servicebuilder.annotations.AppTokenRequired;
+import no.obos.util.servicebuilder.annotations.UserTokenRequired;
+import org.junit.Test;
+
+import javax.ws.rs.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceAuthorizationTest {
+
+    @AppTokenRequired(false)
+    @AppIdWhitelist({3, 1, 2})
+    static class Resource {
+        public void unannotated() {
+        }
+
+        @AppTokenRequired
+        @UserTokenRequired(false)
+        @AppIdWhitelist(value = 42, exclusive = false)
+        public void annotated() {
+        }
+    }
+
+    @Path("/swagger.json")
+    static class SwaggerResource {
+        public void get() {
+        }
+    }
+
+    static class SwaggerSubclass extends SwaggerResource {
+    }
+
+    @Test
+    public void classAnnotationsApplyToUnannotatedMethods() throws Exception {
+        ResourceAuthorization authorization = ResourceAuthorizations.get(Resource.class, Resource.class.getMethod("unannotated"));
+
+        assertThat(authorization.appTokenRequired(true)).isFalse();
+        assertThat(authorization.userTokenRequired(true)).isTrue();
+        assertThat(authorization.isWhitelisted(2)).isTrue();
+        assertThat(authorization.isWhitelisted(4)).isFalse();
+        assertThat(authorization.isWhitelisted(null)).isFalse();
+        assertThat(authorization.exclusiveWhitelist).isTrue();
+        assertThat(authorization.swaggerResource).isFalse();
+    }
+
+    @Test
+    public void methodAnnotationsOverrideClass() throws Exception {
+        ResourceAuthorization authorization = ResourceAuthorizations.get(Resource.class, Resource.class.getMethod("annotated"));
+
+        assertThat(authorization.appTokenRequired(false)).isTrue();
+        assertThat(authorization.userTokenRequired(true)).isFalse();
+        assertThat(authorization.isWhitelisted(42)).isTrue();
+        assertThat(authorization.isWhitelisted(1)).isFalse();
+        assertThat(authorization.exclusiveWhitelist).isFalse();
+    }
+
+    @Test
+    public void descriptorIsComputedOnce() throws Exception {
+        assertThat(ResourceAuthorizations.get(Resource.class, Resource.class.getMethod("annotated")))
+                .isSameAs(ResourceAuthorizations.get(Resource.class, Resource.class.getMethod("annotated")));
+        assertThat(ResourceAuthorizations.get(SwaggerResource.class, SwaggerResource.class.getMethod("get")).swaggerResource)
+                .isTrue();
+    }
+
+    @Test
+    public void swaggerPathIsFoundOnSuperclass() throws Exception {
+        assertThat(ResourceAuthorizations.get(SwaggerSubclass.class, SwaggerSubclass.class.getMethod("get")).swaggerResource)
+                .isTrue();
+    }
+}
@@ -0,0 +1,43 @@
+package no.obos.util.servicebuilder.authorization;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoleSetTest {
+
+    @Test
+    public void rolesAreMatchedCaseInsensitively() {
+        RoleOrdinals.register("role_set_test_admin");
+        RoleSet roles = RoleSet.of(ImmutableSet.of("ROLE_SET_TEST_ADMIN", "ROLE_SET_TEST_READER"));
+
+        assertThat(roles.contains("role_set_test_admin")).isTrue();
+        assertThat(roles.contains(" Role_Set_Test_Reader ")).isTrue();
+        assertThat(roles.contains("ROLE_SET_TEST_WRITER")).isFalse();
+    }
+
+    @Test
+    public void namesAreRecoveredFromBits() {
+        ImmutableSet<String> tilganger = ImmutableSet.of("ROLE_SET_TEST_A", "ROLE_SET_TEST_B");
+
+        assertThat(RoleSet.of(tilganger).toNames()).containsExactlyInAnyOrderElementsOf(tilganger);
+        assertThat(RoleSet.of(tilganger)).isEqualTo(RoleSet.of(tilganger));
+    }
+
+    @Test
+    public void unregisteredTilgangerAreNotGivenOrdinals() {
+        RoleSet roles = RoleSet.of(ImmutableSet.of("ROLE_SET_TEST_UNREGISTERED"));
+
+        assertThat(RoleOrdinals.ordinalOf("ROLE_SET_TEST_UNREGISTERED")).isEqualTo(- 1);
+        assertThat(roles.contains("role_set_test_unregistered")).isTrue();
+        assertThat(roles.toNames()).containsExactly("ROLE_SET_TEST_UNREGISTERED");
+    }
+
+    @Test
+    public void namesAreComputedOnce() {
+        RoleSet roles = RoleSet.of(ImmutableSet.of("ROLE_SET_TEST_A", "ROLE_SET_TEST_UNREGISTERED"));
+
+        assertThat(roles.toNames()).isSameAs(roles.toNames());
+    }
+}
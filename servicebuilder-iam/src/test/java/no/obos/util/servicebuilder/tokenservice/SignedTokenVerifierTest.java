@@ -0,0 +1,120 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import com.google.common.collect.ImmutableMap;
+import no.obos.iam.tokenservice.ApplicationToken;
+import no.obos.iam.tokenservice.TokenServiceClient;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class SignedTokenVerifierTest {
+    private static final KeyPair keyPair = generateKeyPair();
+    private static final KeyPair otherKeyPair = generateKeyPair();
+
+    /**
+     * Stedfortreder for TokenService sitt nøkkelendepunkt.
+     */
+    private final VerificationKeyProvider keyProvider = () -> ImmutableMap.of("key-1", keyPair.getPublic());
+
+    @Test
+    public void validTokenIsVerifiedLocally() throws Exception {
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+
+        SignedToken token = verifier.verify(sign("key-1", keyPair.getPrivate(), "123", inMinutes(5)));
+
+        assertThat(token.getApplicationId()).isEqualTo("123");
+        assertThat(token.getRoles()).containsExactly("reader");
+    }
+
+    @Test
+    public void expiredTokenIsRejected() throws Exception {
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+
+        assertThatThrownBy(() -> verifier.verify(sign("key-1", keyPair.getPrivate(), "123", inMinutes(- 1))))
+                .isInstanceOf(SignedTokenVerifier.InvalidSignedTokenException.class);
+    }
+
+    @Test
+    public void tamperedTokenIsRejected() throws Exception {
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+
+        assertThatThrownBy(() -> verifier.verify(sign("key-1", otherKeyPair.getPrivate(), "123", inMinutes(5))))
+                .isInstanceOf(SignedTokenVerifier.InvalidSignedTokenException.class);
+    }
+
+    @Test
+    public void unknownKeyFallsBackToTokenService() throws Exception {
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+
+        assertThat(verifier.verify(sign("key-2", otherKeyPair.getPrivate(), "123", inMinutes(5)))).isNull();
+    }
+
+    @Test
+    public void lookupDoesNotCallTokenServiceForSignedTokens() throws Exception {
+        TokenServiceClient tokenServiceClient = mock(TokenServiceClient.class);
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+        TokenServiceLookup lookup = new TokenServiceLookup(tokenServiceClient, 0, verifier);
+
+        ApplicationToken token = lookup.getApptokenById(sign("key-1", keyPair.getPrivate(), "123", inMinutes(5)));
+
+        assertThat(token.getApplicationId()).isEqualTo("123");
+        verifyZeroInteractions(tokenServiceClient);
+    }
+
+    @Test
+    public void invalidSignedTokenIsLookedUpInTokenService() throws Exception {
+        TokenServiceClient tokenServiceClient = mock(TokenServiceClient.class);
+        SignedTokenVerifier verifier = new SignedTokenVerifier(keyProvider, 0);
+        verifier.start();
+        TokenServiceLookup lookup = new TokenServiceLookup(tokenServiceClient, 0, verifier);
+        String expired = sign("key-1", keyPair.getPrivate(), "123", inMinutes(- 1));
+        IllegalStateException rejected = new IllegalStateException("invalid apptoken");
+        when(tokenServiceClient.getApptokenById(expired)).thenThrow(rejected);
+
+        assertThatThrownBy(() -> lookup.getApptokenById(expired)).isSameAs(rejected);
+    }
+
+    private static long inMinutes(long minutes) {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TimeUnit.MINUTES.toSeconds(minutes);
+    }
+
+    private static String sign(String keyId, PrivateKey privateKey, String appId, long expiresAtSeconds) throws Exception {
+        String header = encode("{\"alg\":\"RS256\",\"kid\":\"" + keyId + "\"}");
+        String claims = encode("{\"app_id\":\"" + appId + "\",\"exp\":" + expiresAtSeconds + ",\"roles\":[\"reader\"]}");
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update((header + "." + claims).getBytes(StandardCharsets.US_ASCII));
+        return header + "." + claims + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
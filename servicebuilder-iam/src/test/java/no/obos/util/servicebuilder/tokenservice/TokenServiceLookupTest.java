@@ -0,0 +1,75 @@
+package no.obos.util.servicebuilder.tokenservice;
+
+import no.obos.iam.tokenservice.ApplicationToken;
+import no.obos.iam.tokenservice.TokenServiceClient;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TokenServiceLookupTest {
+    private static final String APPTOKEN_ID = "abc-123";
+
+    private final TokenServiceClient tokenServiceClient = mock(TokenServiceClient.class);
+
+    @Test
+    public void concurrentLookupsShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ApplicationToken token = new ApplicationToken();
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenAnswer(it -> {
+            release.await(5, TimeUnit.SECONDS);
+            return token;
+        });
+        TokenServiceLookup lookup = new TokenServiceLookup(tokenServiceClient, 10_000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ApplicationToken> first = executor.submit(() -> lookup.getApptokenById(APPTOKEN_ID));
+            Future<ApplicationToken> second = executor.submit(() -> lookup.getApptokenById(APPTOKEN_ID));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(token);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(token);
+            verify(tokenServiceClient, times(1)).getApptokenById(APPTOKEN_ID);
+        } finally {
+            executor.shutdownNow();
+            lookup.stop();
+        }
+    }
+
+    @Test
+    public void slowLookupTimesOut() {
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenAnswer(it -> {
+            Thread.sleep(5_000);
+            return new ApplicationToken();
+        });
+        TokenServiceLookup lookup = new TokenServiceLookup(tokenServiceClient, 50);
+        try {
+            assertThatThrownBy(() -> lookup.getApptokenById(APPTOKEN_ID)).isInstanceOf(TokenServiceTimeoutException.class);
+        } finally {
+            lookup.stop();
+        }
+    }
+
+    @Test
+    public void failuresArePropagated() {
+        IllegalStateException failure = new IllegalStateException("tokenservice down");
+        when(tokenServiceClient.getApptokenById(APPTOKEN_ID)).thenThrow(failure);
+        TokenServiceLookup lookup = new TokenServiceLookup(tokenServiceClient, 1_000);
+        try {
+            assertThatThrownBy(() -> lookup.getApptokenById(APPTOKEN_ID)).isSameAs(failure);
+        } finally {
+            lookup.stop();
+        }
+    }
+}
@@ -9,5 +9,15 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface Log {
     boolean value() default true;
+
+    /**
+     * Andel av kallene (i prosent) som logges. Negativ verdi betyr at addon-default gjelder.
+     */
+    double samplePercent() default - 1;
+
+    /**
+     * Maks antall kall per sekund som logges for endepunktet. Negativ verdi betyr at addon-default gjelder.
+     */
+    int maxPerSecond() default - 1;
 }
 
@@ -3,6 +3,26 @@ package no.obos.util.servicebuilder.model;
 public interface PropertyProvider {
     String get(String key);
 
+    /**
+     * True if the property is present and non-blank.
+     * The default implementation treats a property that get fails to look up as missing; implementations that can
+     * check for presence directly should override it.
+     */
+    default boolean has(String key) {
+        try {
+            String value = get(key);
+            return value != null && ! value.trim().isEmpty();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    default String get(String key, String defaultValue) {
+        return has(key)
+                ? get(key)
+                : defaultValue;
+    }
+
     void failIfNotPresent(String... keys);
 
     void failIfNotPresent(Iterable<String> keys);